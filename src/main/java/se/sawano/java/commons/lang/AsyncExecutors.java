@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the default executor for blocking work. On a JVM with virtual threads (Java 21+) a virtual-thread-per-task executor is used, otherwise a shared cached pool of daemon threads.
+ *
+ * <p>The library is compiled for Java 8, so virtual threads are looked up reflectively once, when this class is initialized.</p>
+ */
+final class AsyncExecutors {
+
+    private static final Executor VIRTUAL = virtualThreadPerTaskExecutor();
+    private static final Executor BLOCKING = VIRTUAL != null ? VIRTUAL : Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    private AsyncExecutors() {}
+
+    /**
+     * @return an executor suitable for tasks that spend most of their time blocked, e.g. waiting for I/O
+     */
+    static Executor blocking() {
+        return BLOCKING;
+    }
+
+    /**
+     * @return true if {@link #blocking()} runs tasks on virtual threads
+     */
+    static boolean virtualThreads() {
+        return VIRTUAL != null;
+    }
+
+    private static Executor virtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "java-commons-blocking-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
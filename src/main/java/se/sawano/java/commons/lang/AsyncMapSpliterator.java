@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import static se.sawano.java.commons.lang.Throwables.sneakyThrow;
+
+/**
+ * A spliterator that maps the elements of a source spliterator asynchronously, keeping at most {@code maxInFlight} calls running at any time. Results are emitted in encounter order, or in
+ * completion order if {@code ordered} is false.
+ *
+ * <p>The source is consumed sequentially, the concurrency is internal to this spliterator, so it never splits.</p>
+ *
+ * @param <T>
+ *         the type of the elements in the source
+ * @param <R>
+ *         the type of the mapped elements
+ */
+final class AsyncMapSpliterator<T, R> implements Spliterator<R>, Consumer<T> {
+
+    private final Spliterator<T> source;
+    private final ThrowableFunction<? super T, ? extends R> function;
+    private final int maxInFlight;
+    private final Executor executor;
+    private final boolean ordered;
+    private final ArrayDeque<Call> inFlight;
+    private final BlockingQueue<Call> completed;
+    private boolean exhausted;
+
+    AsyncMapSpliterator(final Spliterator<T> source, final ThrowableFunction<? super T, ? extends R> function, final int maxInFlight, final Executor executor, final boolean ordered) {
+        this.source = source;
+        this.function = function;
+        this.maxInFlight = maxInFlight;
+        this.executor = executor;
+        this.ordered = ordered;
+        this.inFlight = new ArrayDeque<>(Math.min(maxInFlight, 1024));
+        this.completed = ordered ? null : new LinkedBlockingQueue<>();
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super R> action) {
+        while (!exhausted && inFlight.size() < maxInFlight) {
+            exhausted = !source.tryAdvance(this);
+        }
+        if (inFlight.isEmpty()) {
+            return false;
+        }
+        final Call call = ordered ? inFlight.poll() : takeCompleted();
+        action.accept(result(call));
+        return true;
+    }
+
+    @Override
+    public void accept(final T t) {
+        final Call call = new Call(t);
+        inFlight.add(call);
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels, and interrupts, all calls in flight.
+     */
+    void cancel() {
+        Call call;
+        while ((call = inFlight.poll()) != null) {
+            call.cancel(true);
+        }
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return ordered ? source.characteristics() & ORDERED : 0;
+    }
+
+    private Call takeCompleted() {
+        try {
+            final Call call = completed.take();
+            inFlight.remove(call);
+            return call;
+        } catch (InterruptedException e) {
+            return interrupted();
+        }
+    }
+
+    private R result(final Call call) {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            cancel();
+            throw sneakyThrow(e.getCause());
+        } catch (InterruptedException e) {
+            return interrupted();
+        }
+    }
+
+    private <V> V interrupted() {
+        cancel();
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Interrupted while waiting for asynchronous mapping");
+    }
+
+    private final class Call extends FutureTask<R> {
+
+        Call(final T t) {
+            super(() -> function.apply(t));
+        }
+
+        @Override
+        protected void done() {
+            if (completed != null) {
+                completed.add(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static se.sawano.java.commons.lang.validate.Validate.inclusiveBetween;
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Coalesces single key loads into bulk calls. Keys passed to {@link #load(Object)} are collected into a batch that is dispatched as one call to the bulk function when it reaches the maximum
+ * batch size, or when the window has passed since the first key of the batch was added, whichever comes first:
+ * <pre>
+ * final BatchLoader&lt;Long, User&gt; users = BatchLoader.of(ids -&gt; userService.findAll(ids), 100, Duration.ofMillis(2), scheduler);
+ * final CompletableFuture&lt;User&gt; user = users.load(42L);
+ * </pre>
+ * <p>Adding a key to a batch is lock-free; batches are linked lists that are pushed to with CAS. The bulk function is called with the distinct keys of the batch, in the order they were added, and
+ * every future of a key is completed with the value the function returned for it, or with null if it returned no value for it. If the function throws, every future of the batch is completed
+ * exceptionally with the exception.</p>
+ *
+ * <p>This class is thread safe</p>
+ *
+ * @param <K>
+ *         the type of the keys
+ * @param <V>
+ *         the type of the values
+ */
+public final class BatchLoader<K, V> {
+
+    private static final int SEALED = 1 << 30;
+
+    private final ThrowableFunction<? super Collection<K>, ? extends Map<K, ? extends V>> bulkFunction;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final AtomicReference<Batch> current = new AtomicReference<>(new Batch());
+
+    private BatchLoader(final ThrowableFunction<? super Collection<K>, ? extends Map<K, ? extends V>> bulkFunction, final int maxBatchSize, final Duration window,
+                        final ScheduledExecutorService scheduler, final Executor executor) {
+        this.bulkFunction = bulkFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = window.toNanos();
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a loader that calls the bulk function in the default executor for blocking calls. See {@link #of(ThrowableFunction, int, Duration, ScheduledExecutorService, Executor)}.
+     *
+     * @param bulkFunction
+     *         the function that loads the values of a collection of keys, not null
+     * @param maxBatchSize
+     *         the maximum number of loads in a batch, between 1 and 2^30 - 1
+     * @param window
+     *         the maximum time to wait for more keys after the first key of a batch is added, must be positive
+     * @param scheduler
+     *         the scheduler used to dispatch batches when the window has passed, not null
+     * @param <K>
+     *         the type of the keys
+     * @param <V>
+     *         the type of the values
+     *
+     * @return the loader
+     */
+    public static <K, V> BatchLoader<K, V> of(final ThrowableFunction<? super Collection<K>, ? extends Map<K, ? extends V>> bulkFunction, final int maxBatchSize, final Duration window,
+                                              final ScheduledExecutorService scheduler) {
+        return of(bulkFunction, maxBatchSize, window, scheduler, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Creates a loader that calls the bulk function in the given executor.
+     *
+     * @param bulkFunction
+     *         the function that loads the values of a collection of keys, not null
+     * @param maxBatchSize
+     *         the maximum number of loads in a batch, between 1 and 2^30 - 1
+     * @param window
+     *         the maximum time to wait for more keys after the first key of a batch is added, must be positive
+     * @param scheduler
+     *         the scheduler used to dispatch batches when the window has passed, not null
+     * @param executor
+     *         the executor to call the bulk function in, not null
+     * @param <K>
+     *         the type of the keys
+     * @param <V>
+     *         the type of the values
+     *
+     * @return the loader
+     */
+    public static <K, V> BatchLoader<K, V> of(final ThrowableFunction<? super Collection<K>, ? extends Map<K, ? extends V>> bulkFunction, final int maxBatchSize, final Duration window,
+                                              final ScheduledExecutorService scheduler, final Executor executor) {
+        notNull(bulkFunction);
+        inclusiveBetween(1, SEALED - 1, maxBatchSize, "Max batch size must be between 1 and %d: %d", SEALED - 1, maxBatchSize);
+        notNull(window);
+        isTrue(!window.isNegative() && !window.isZero(), "Window must be positive: %s", window);
+        notNull(scheduler);
+        notNull(executor);
+        return new BatchLoader<>(bulkFunction, maxBatchSize, window, scheduler, executor);
+    }
+
+    /**
+     * Adds a key to the current batch.
+     *
+     * @param key
+     *         the key to load, not null
+     *
+     * @return a future that completes with the value of the key, or null if the bulk function returned no value for it, when the batch has been loaded
+     */
+    public CompletableFuture<V> load(final K key) {
+        notNull(key);
+        final Load<K, V> load = new Load<>(key);
+        while (true) {
+            final Batch batch = current.get();
+            final int size = batch.reserve(maxBatchSize);
+            if (size < 0) {
+                current.compareAndSet(batch, new Batch());
+                continue;
+            }
+            if (size == maxBatchSize) {
+                current.compareAndSet(batch, new Batch());
+            } else if (size == 1) {
+                scheduleSeal(batch);
+            }
+            batch.push(load);
+            return load.future;
+        }
+    }
+
+    private void scheduleSeal(final Batch batch) {
+        try {
+            scheduler.schedule(() -> seal(batch), windowNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            seal(batch);
+        }
+    }
+
+    private void seal(final Batch batch) {
+        current.compareAndSet(batch, new Batch());
+        batch.seal();
+    }
+
+    private void dispatch(final Load<K, V> loads) {
+        try {
+            executor.execute(() -> call(loads));
+        } catch (RejectedExecutionException e) {
+            for (Load<K, V> load = loads; load != null; load = load.next) {
+                load.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void call(final Load<K, V> loads) {
+        final Map<K, Load<K, V>> byKey = byKey(loads);
+        try {
+            final Map<K, ? extends V> values = bulkFunction.apply(Collections.unmodifiableSet(byKey.keySet()));
+            notNull(values, "Bulk function returned null");
+            for (Map.Entry<K, Load<K, V>> entry : byKey.entrySet()) {
+                final V value = values.get(entry.getKey());
+                for (Load<K, V> load = entry.getValue(); load != null; load = load.sameKey) {
+                    load.future.complete(value);
+                }
+            }
+        } catch (Throwable t) {
+            for (Load<K, V> load = loads; load != null; load = load.next) {
+                load.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Groups the loads by key, in the order they were added, chaining loads of the same key through {@link Load#sameKey}.
+     */
+    private static <K, V> Map<K, Load<K, V>> byKey(final Load<K, V> loads) {
+        Load<K, V> reversed = null;
+        for (Load<K, V> load = loads; load != null; load = load.next) {
+            load.previous = reversed;
+            reversed = load;
+        }
+        final Map<K, Load<K, V>> byKey = new LinkedHashMap<>();
+        for (Load<K, V> load = reversed; load != null; load = load.previous) {
+            load.sameKey = byKey.put(load.key, load);
+        }
+        return byKey;
+    }
+
+    private static final class Load<K, V> {
+        final K key;
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        Load<K, V> next;
+        Load<K, V> previous;
+        Load<K, V> sameKey;
+
+        Load(final K key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A batch is a stack of loads. A load first reserves a slot in the batch, then pushes itself, so that the batch can be sealed, by the window or by the load that fills it, while reserved loads are
+     * still being pushed. {@code outstanding} is decremented by every push and incremented by the number of reserved slots when the batch is sealed, so it reaches zero exactly once, when the batch is
+     * sealed and complete, and the thread that brings it to zero dispatches the batch.
+     */
+    private final class Batch {
+        private final AtomicInteger reserved = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicReference<Load<K, V>> head = new AtomicReference<>();
+
+        /**
+         * @return the size of the batch including the reserved slot, or -1 if the batch is sealed
+         */
+        int reserve(final int maxSize) {
+            while (true) {
+                final int value = reserved.get();
+                if ((value & SEALED) != 0) {
+                    return -1;
+                }
+                final int size = value + 1;
+                if (reserved.compareAndSet(value, size == maxSize ? size | SEALED : size)) {
+                    if (size == maxSize) {
+                        arrive(size);
+                    }
+                    return size;
+                }
+            }
+        }
+
+        void push(final Load<K, V> load) {
+            Load<K, V> top;
+            do {
+                top = head.get();
+                load.next = top;
+            } while (!head.compareAndSet(top, load));
+            arrive(-1);
+        }
+
+        void seal() {
+            while (true) {
+                final int value = reserved.get();
+                if ((value & SEALED) != 0) {
+                    return;
+                }
+                if (reserved.compareAndSet(value, value | SEALED)) {
+                    arrive(value);
+                    return;
+                }
+            }
+        }
+
+        private void arrive(final int delta) {
+            if (outstanding.addAndGet(delta) == 0 && head.get() != null) {
+                dispatch(head.get());
+            }
+        }
+    }
+}
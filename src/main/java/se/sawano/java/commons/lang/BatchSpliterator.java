@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator that groups the elements of a source spliterator into lists of a fixed size. The last list may be smaller.
+ *
+ * <p>If the source is {@link #SIZED} and {@link #SUBSIZED} the source is split directly and the prefix is topped up with elements taken from the head of the remaining part, so that every split ends
+ * on a batch boundary. Otherwise a number of batches are read into an array, in the same way as {@link Spliterators#spliteratorUnknownSize(java.util.Iterator, int)} does.</p>
+ *
+ * <p>When {@code reuse} is true the same list instance is cleared and passed on for every batch in {@link #forEachRemaining(Consumer)}. This must only be used when the downstream consumer does not
+ * retain the lists.</p>
+ *
+ * @param <T>
+ *         the type of the elements in the source
+ */
+final class BatchSpliterator<T> implements Spliterator<List<T>>, Consumer<T> {
+
+    private static final int SPLIT_UNIT = 1 << 10;
+    private static final int MAX_SPLIT = 1 << 25;
+
+    private final Spliterator<T> source;
+    private final int batchSize;
+    private final boolean reuse;
+    private Object[] tail;
+    private int tailIndex;
+    private int splitBatches;
+    private List<T> current;
+    private Consumer<? super List<T>> downstream;
+
+    BatchSpliterator(final Spliterator<T> source, final int batchSize, final boolean reuse) {
+        this(source, batchSize, reuse, null);
+    }
+
+    private BatchSpliterator(final Spliterator<T> source, final int batchSize, final boolean reuse, final Object[] tail) {
+        this.source = source;
+        this.batchSize = batchSize;
+        this.reuse = reuse;
+        this.tail = tail;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super List<T>> action) {
+        final List<T> batch = nextBatch(batchSize);
+        if (batch == null) {
+            return false;
+        }
+        action.accept(batch);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super List<T>> action) {
+        downstream = action;
+        current = newBatch();
+        source.forEachRemaining(this);
+        while (tail != null) {
+            accept(takeFromTail());
+        }
+        final List<T> last = current;
+        current = null;
+        downstream = null;
+        if (!last.isEmpty()) {
+            action.accept(last);
+        }
+    }
+
+    @Override
+    public void accept(final T t) {
+        current.add(t);
+        if (downstream != null && current.size() == batchSize) {
+            downstream.accept(current);
+            if (reuse) {
+                current.clear();
+            }
+            else {
+                current = newBatch();
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<List<T>> trySplit() {
+        if ((source.characteristics() & (SIZED | SUBSIZED)) == (SIZED | SUBSIZED)) {
+            return splitSized();
+        }
+        return splitToArray();
+    }
+
+    @Override
+    public long estimateSize() {
+        final long size = source.estimateSize();
+        if (size == Long.MAX_VALUE) {
+            return size;
+        }
+        final long total = size + tailRemaining();
+        return total / batchSize + (total % batchSize == 0 ? 0 : 1);
+    }
+
+    @Override
+    public int characteristics() {
+        final int sourceCharacteristics = source.characteristics();
+        int characteristics = (sourceCharacteristics & (ORDERED | SIZED)) | NONNULL;
+        if ((sourceCharacteristics & (SIZED | SUBSIZED)) == (SIZED | SUBSIZED)) {
+            characteristics |= SUBSIZED;
+        }
+        return characteristics;
+    }
+
+    private Spliterator<List<T>> splitSized() {
+        if (source.estimateSize() <= batchSize) {
+            return null;
+        }
+        final Spliterator<T> prefix = source.trySplit();
+        if (prefix == null) {
+            return null;
+        }
+        final int remainder = (int) (prefix.estimateSize() % batchSize);
+        final Object[] prefixTail = remainder == 0 ? null : take(batchSize - remainder);
+        return new BatchSpliterator<>(prefix, batchSize, false, prefixTail);
+    }
+
+    private Spliterator<List<T>> splitToArray() {
+        final long size = estimateSize();
+        if (size <= 1) {
+            return null;
+        }
+        final int unit = Math.max(1, SPLIT_UNIT / batchSize);
+        final int maxBatches = Math.max(1, MAX_SPLIT / batchSize);
+        final int n = (int) Math.min(size, Math.min(maxBatches, splitBatches + unit));
+        final Object[] batches = new Object[n];
+        int count = 0;
+        List<T> batch;
+        while (count < n && (batch = nextBatch(batchSize)) != null) {
+            batches[count++] = batch;
+        }
+        if (count == 0) {
+            return null;
+        }
+        splitBatches = count;
+        @SuppressWarnings("unchecked")
+        final Spliterator<List<T>> prefix = (Spliterator<List<T>>) (Spliterator<?>) Spliterators.spliterator(batches, 0, count, characteristics() & (ORDERED | NONNULL));
+        return prefix;
+    }
+
+    private Object[] take(final int n) {
+        final List<T> taken = nextBatch(n);
+        return taken == null ? null : taken.toArray();
+    }
+
+    private List<T> nextBatch(final int n) {
+        final List<T> batch = newBatch();
+        current = batch;
+        while (batch.size() < n && source.tryAdvance(this)) {
+            // accept() adds to the current batch
+        }
+        current = null;
+        while (batch.size() < n && tail != null) {
+            batch.add(takeFromTail());
+        }
+        return batch.isEmpty() ? null : batch;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T takeFromTail() {
+        final T t = (T) tail[tailIndex];
+        tail[tailIndex++] = null;
+        if (tailIndex == tail.length) {
+            tail = null;
+            tailIndex = 0;
+        }
+        return t;
+    }
+
+    private long tailRemaining() {
+        return tail == null ? 0 : tail.length - tailIndex;
+    }
+
+    private List<T> newBatch() {
+        final long size = source.estimateSize();
+        final long expected = size == Long.MAX_VALUE ? batchSize : size + tailRemaining();
+        return new ArrayList<>((int) Math.max(1, Math.min(batchSize, expected)));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A line of text that is a view of the bytes of a buffer and is decoded lazily. A line that only contains single byte characters, e.g. ASCII, is never decoded, its characters are read directly
+ * from the buffer. Other lines are decoded the first time their content is accessed.
+ *
+ * <p>This class is not thread safe</p>
+ */
+final class ByteLine implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int byteLength;
+    private final Charset charset;
+    private boolean direct;
+    private char[] chars;
+    private int charLength = -1;
+
+    ByteLine(final ByteBuffer buffer, final int offset, final int byteLength, final Charset charset, final boolean direct) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.byteLength = byteLength;
+        this.charset = charset;
+        this.direct = direct;
+    }
+
+    @Override
+    public int length() {
+        resolve();
+        return charLength;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        resolve();
+        if (index < 0 || index >= charLength) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + charLength);
+        }
+        return direct ? (char) (buffer.get(offset + index) & 0xff) : chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        resolve();
+        if (start < 0 || end > charLength || start > end) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", End: " + end + ", Length: " + charLength);
+        }
+        return direct ? new ByteLine(buffer, offset + start, end - start, charset, true) : new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        resolve();
+        if (direct) {
+            final char[] copy = new char[charLength];
+            for (int i = 0; i < charLength; ++i) {
+                copy[i] = (char) (buffer.get(offset + i) & 0xff);
+            }
+            return new String(copy);
+        }
+        return new String(chars, 0, charLength);
+    }
+
+    private void resolve() {
+        if (charLength >= 0) {
+            return;
+        }
+        if (!direct) {
+            direct = true;
+            for (int i = 0; i < byteLength; ++i) {
+                if (buffer.get(offset + i) < 0) {
+                    direct = false;
+                    break;
+                }
+            }
+        }
+        if (direct) {
+            charLength = byteLength;
+        }
+        else {
+            final ByteBuffer bytes = buffer.duplicate();
+            bytes.limit(offset + byteLength).position(offset);
+            final CharBuffer decoded = charset.decode(bytes);
+            chars = decoded.array();
+            charLength = decoded.remaining();
+        }
+    }
+}
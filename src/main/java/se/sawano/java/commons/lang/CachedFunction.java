@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static se.sawano.java.commons.lang.Throwables.sneakyThrow;
+
+/**
+ * A {@link ThrowableFunction} that caches its results in a bounded, concurrent cache. Created by {@link ThrowableFunctions#cached(ThrowableFunction, int)}.
+ *
+ * <p>Concurrent calls with the same argument share a single call to the underlying function. Failed calls are not cached. When the cache is full, entries are evicted using a W-TinyLFU policy: new
+ * entries enter a small LRU window and are then admitted to a segmented LRU main space only if a frequency sketch estimates that they are more popular than the entry they would replace. This keeps
+ * frequently used entries in the cache when a burst of one-off arguments passes through.</p>
+ *
+ * <p>The function must not call the cached function with the argument it is loading, directly or through other threads. A recursive call with the same argument in the loading thread fails
+ * with an {@link IllegalStateException}, like {@link java.util.concurrent.ConcurrentHashMap#computeIfAbsent(Object, java.util.function.Function)} does, instead of waiting for itself forever. A
+ * cycle of loads across threads is not detected and deadlocks.</p>
+ *
+ * <p>Cached values are read without locking. The eviction policy is guarded by a lock that reads only try to take, so under heavy contention some accesses are not recorded in the policy.</p>
+ *
+ * <p>This class is thread safe</p>
+ *
+ * @param <T>
+ *         the type of the input of the function
+ * @param <R>
+ *         the type of the result of the function
+ */
+public final class CachedFunction<T, R> implements ThrowableFunction<T, R> {
+
+    private static final Object NULL_KEY = new Object();
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private final ThrowableFunction<? super T, ? extends R> function;
+    private final ConcurrentMap<Object, Node<R>> nodes = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final Node<R> window = Node.sentinel();
+    private final Node<R> probation = Node.sentinel();
+    private final Node<R> protectedSegment = Node.sentinel();
+    private final int maxWindow;
+    private final int maxMain;
+    private final int maxProtected;
+    private int windowSize;
+    private int probationSize;
+    private int protectedSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTimeNanos = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    CachedFunction(final ThrowableFunction<? super T, ? extends R> function, final int maxSize) {
+        this.function = function;
+        this.sketch = new FrequencySketch(maxSize);
+        this.maxWindow = Math.max(1, maxSize / 100);
+        this.maxMain = maxSize - maxWindow;
+        this.maxProtected = (int) (maxMain * 4L / 5);
+    }
+
+    @Override
+    public R apply(final T t) throws Exception {
+        final Object key = t == null ? NULL_KEY : t;
+        Node<R> node = nodes.get(key);
+        if (node != null && node.loaded) {
+            hitCount.increment();
+            recordAccess(node);
+            return node.value;
+        }
+        if (node == null) {
+            final Node<R> created = new Node<>(key, new FutureTask<>(() -> function.apply(t)), Thread.currentThread());
+            node = nodes.putIfAbsent(key, created);
+            if (node == null) {
+                return load(created);
+            }
+        }
+        if (node.loader == Thread.currentThread() && !node.task.isDone()) {
+            throw new IllegalStateException("Recursive call with an argument that is being loaded: " + t);
+        }
+        hitCount.increment();
+        try {
+            return node.task.get();
+        } catch (ExecutionException e) {
+            throw sneakyThrow(e.getCause());
+        }
+    }
+
+    /**
+     * Removes the cached result of an argument, if any. A call for the argument that is in flight is not affected, but its result is not cached.
+     *
+     * @param t
+     *         the argument
+     */
+    public void invalidate(final T t) {
+        final Node<R> node = nodes.remove(t == null ? NULL_KEY : t);
+        if (node != null) {
+            policyLock.lock();
+            try {
+                unlink(node);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidateAll() {
+        for (final Object key : nodes.keySet()) {
+            final Node<R> node = nodes.remove(key);
+            if (node != null) {
+                policyLock.lock();
+                try {
+                    unlink(node);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached results, including calls that are in flight
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return a snapshot of the statistics of the cache
+     */
+    public CacheStatistics statistics() {
+        return new CacheStatistics(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTimeNanos.sum(), evictionCount.sum());
+    }
+
+    private R load(final Node<R> node) throws Exception {
+        missCount.increment();
+        final long start = System.nanoTime();
+        node.task.run();
+        node.loader = null;
+        totalLoadTimeNanos.add(System.nanoTime() - start);
+        final R value;
+        try {
+            value = node.task.get();
+        } catch (ExecutionException e) {
+            loadFailureCount.increment();
+            nodes.remove(node.key, node);
+            throw sneakyThrow(e.getCause());
+        }
+        loadSuccessCount.increment();
+        node.value = value;
+        node.loaded = true;
+        admit(node);
+        return value;
+    }
+
+    private void recordAccess(final Node<R> node) {
+        if (!policyLock.tryLock()) {
+            return;
+        }
+        try {
+            if (node.segment != NONE) {
+                sketch.increment(node.key.hashCode());
+                onHit(node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void admit(final Node<R> node) {
+        policyLock.lock();
+        try {
+            if (nodes.get(node.key) != node) {
+                return;
+            }
+            sketch.increment(node.key.hashCode());
+            addFirst(window, node, WINDOW);
+            while (windowSize > maxWindow) {
+                final Node<R> candidate = window.prev;
+                unlink(candidate);
+                if (probationSize + protectedSize < maxMain) {
+                    addFirst(probation, candidate, PROBATION);
+                }
+                else if (maxMain == 0) {
+                    evict(candidate);
+                }
+                else {
+                    final Node<R> victim = probationSize > 0 ? probation.prev : protectedSegment.prev;
+                    if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                        evict(victim);
+                        addFirst(probation, candidate, PROBATION);
+                    }
+                    else {
+                        evict(candidate);
+                    }
+                }
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void onHit(final Node<R> node) {
+        switch (node.segment) {
+            case WINDOW:
+                unlink(node);
+                addFirst(window, node, WINDOW);
+                break;
+            case PROBATION:
+                unlink(node);
+                addFirst(protectedSegment, node, PROTECTED);
+                if (protectedSize > maxProtected) {
+                    final Node<R> demoted = protectedSegment.prev;
+                    unlink(demoted);
+                    addFirst(probation, demoted, PROBATION);
+                }
+                break;
+            case PROTECTED:
+                unlink(node);
+                addFirst(protectedSegment, node, PROTECTED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void evict(final Node<R> node) {
+        unlink(node);
+        if (nodes.remove(node.key, node)) {
+            evictionCount.increment();
+        }
+    }
+
+    private void addFirst(final Node<R> head, final Node<R> node, final int segment) {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+        node.segment = segment;
+        resize(segment, 1);
+    }
+
+    private void unlink(final Node<R> node) {
+        if (node.segment == NONE) {
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        resize(node.segment, -1);
+        node.segment = NONE;
+    }
+
+    private void resize(final int segment, final int delta) {
+        switch (segment) {
+            case WINDOW:
+                windowSize += delta;
+                break;
+            case PROBATION:
+                probationSize += delta;
+                break;
+            case PROTECTED:
+                protectedSize += delta;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static final class Node<R> {
+        final Object key;
+        final FutureTask<R> task;
+        // The thread running the task, cleared when it completes so that the thread is not kept reachable by the cache
+        volatile Thread loader;
+        R value;
+        volatile boolean loaded;
+        // Guarded by the policy lock
+        Node<R> prev;
+        Node<R> next;
+        int segment;
+
+        Node(final Object key, final FutureTask<R> task, final Thread loader) {
+            this.key = key;
+            this.task = task;
+            this.loader = loader;
+        }
+
+        static <R> Node<R> sentinel() {
+            final Node<R> sentinel = new Node<>(null, null, null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import se.sawano.java.commons.lang.validate.exception.ValidationException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * A circuit breaker that stops calling a failing dependency for a while, to let it recover and to fail fast instead of waiting for it:
+ * <pre>
+ * final CircuitBreaker breaker = CircuitBreaker.of(100, 0.5, Duration.ofSeconds(30));
+ * final Response response = breaker.call(() -&gt; client.send(request));
+ * </pre>
+ * <p>The outcomes of the last {@code windowSize} calls are kept in a ring buffer of primitives that is updated with atomic operations, so recording an outcome never locks. Once the window is full
+ * and the failure rate in it reaches the threshold, the circuit opens and calls fail immediately with a {@link CircuitBreakerOpenException}. When the open duration has passed, the circuit is half
+ * open and lets a single probe call through. If the probe succeeds the circuit closes with an empty window, if it fails the circuit opens again.</p>
+ *
+ * <p>Calls run in the calling thread. By default every exception counts as a failure except {@link ValidationException}s and Hystrix {@code HystrixBadRequestException}s, such as those thrown by
+ * {@code HystrixValidate}, since bad input says nothing about the health of the dependency. Such exceptions are not recorded at all.</p>
+ *
+ * <p>This class is thread safe</p>
+ */
+public final class CircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        /**
+         * Calls are permitted and their outcomes are recorded.
+         */
+        CLOSED,
+        /**
+         * Calls are not permitted.
+         */
+        OPEN,
+        /**
+         * A single probe call is permitted to find out if the dependency has recovered.
+         */
+        HALF_OPEN
+    }
+
+    private static final String HYSTRIX_BAD_REQUEST = "com.netflix.hystrix.exception.HystrixBadRequestException";
+    private static final Predicate<Exception> NOT_BAD_REQUEST = e -> !isBadRequest(e);
+
+    private static final int SUCCESS = 1;
+    private static final int FAILURE = 2;
+
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final Predicate<? super Exception> failureOn;
+    private final LongSupplier ticker;
+    private final AtomicReference<Window> window;
+    private final AtomicReference<Circuit> circuit = new AtomicReference<>(Circuit.CLOSED);
+
+    CircuitBreaker(final int windowSize, final double failureRateThreshold, final Duration openDuration, final Predicate<? super Exception> failureOn, final LongSupplier ticker) {
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.failureOn = failureOn;
+        this.ticker = ticker;
+        this.window = new AtomicReference<>(new Window(windowSize));
+    }
+
+    /**
+     * Creates a circuit breaker that counts all exceptions as failures except validation and bad request exceptions.
+     *
+     * @param windowSize
+     *         the number of calls to compute the failure rate over, must be positive
+     * @param failureRateThreshold
+     *         the failure rate, between 0 (exclusive) and 1 (inclusive), at which the circuit opens
+     * @param openDuration
+     *         the time the circuit stays open before a probe call is permitted, must be positive
+     *
+     * @return the circuit breaker
+     */
+    public static CircuitBreaker of(final int windowSize, final double failureRateThreshold, final Duration openDuration) {
+        return of(windowSize, failureRateThreshold, openDuration, NOT_BAD_REQUEST);
+    }
+
+    /**
+     * Creates a circuit breaker that counts the exceptions matching the given predicate as failures. Exceptions that do not match are not recorded at all.
+     *
+     * @param windowSize
+     *         the number of calls to compute the failure rate over, must be positive
+     * @param failureRateThreshold
+     *         the failure rate, between 0 (exclusive) and 1 (inclusive), at which the circuit opens
+     * @param openDuration
+     *         the time the circuit stays open before a probe call is permitted, must be positive
+     * @param failureOn
+     *         the predicate that decides if an exception is a failure, not null
+     *
+     * @return the circuit breaker
+     */
+    public static CircuitBreaker of(final int windowSize, final double failureRateThreshold, final Duration openDuration, final Predicate<? super Exception> failureOn) {
+        isTrue(windowSize > 0, "Window size must be positive: %d", windowSize);
+        isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1, "Failure rate threshold must be in (0, 1]: %s", failureRateThreshold);
+        notNull(openDuration);
+        isTrue(!openDuration.isNegative() && !openDuration.isZero(), "Open duration must be positive: %s", openDuration);
+        notNull(failureOn);
+        return new CircuitBreaker(windowSize, failureRateThreshold, openDuration, failureOn, System::nanoTime);
+    }
+
+    /**
+     * Calls a supplier if the circuit permits it and records the outcome.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the supplier
+     *
+     * @throws CircuitBreakerOpenException
+     *         if the circuit is open, or half open with a probe call in progress
+     * @throws Exception
+     *         any exception thrown by the supplier
+     */
+    public <T> T call(final ThrowableSupplier<? extends T> supplier) throws Exception {
+        notNull(supplier);
+        final boolean probe = acquire();
+        boolean recorded = false;
+        try {
+            final T result = supplier.get();
+            recorded = true;
+            onSuccess(probe);
+            return result;
+        } catch (Exception e) {
+            if (failureOn.test(e)) {
+                recorded = true;
+                onFailure(probe);
+            }
+            throw e;
+        } finally {
+            if (probe && !recorded) {
+                circuit.compareAndSet(Circuit.PROBING, Circuit.OPEN_EXPIRED);
+            }
+        }
+    }
+
+    /**
+     * Calls a function if the circuit permits it and records the outcome. See {@link #call(ThrowableSupplier)}.
+     *
+     * @param function
+     *         the function to call, not null
+     * @param t
+     *         the argument of the function
+     * @param <T>
+     *         the type of the argument
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the result of the function
+     *
+     * @throws CircuitBreakerOpenException
+     *         if the circuit is open, or half open with a probe call in progress
+     * @throws Exception
+     *         any exception thrown by the function
+     */
+    public <T, R> R apply(final ThrowableFunction<? super T, ? extends R> function, final T t) throws Exception {
+        notNull(function);
+        return call(() -> function.apply(t));
+    }
+
+    /**
+     * Decorates a function so that every call to it goes through this circuit breaker.
+     *
+     * @param function
+     *         the function to decorate, not null
+     * @param <T>
+     *         the type of the argument
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the decorated function
+     */
+    public <T, R> ThrowableFunction<T, R> decorate(final ThrowableFunction<? super T, ? extends R> function) {
+        notNull(function);
+        return t -> call(() -> function.apply(t));
+    }
+
+    /**
+     * @return the current state of the circuit. An open circuit whose open duration has passed is reported as half open.
+     */
+    public State state() {
+        final Circuit current = circuit.get();
+        if (current.state == State.OPEN && isExpired(current)) {
+            return State.HALF_OPEN;
+        }
+        return current.state;
+    }
+
+    /**
+     * @return the failure rate of the calls in the window, or 0 if no call has been recorded since the circuit was last closed
+     */
+    public double failureRate() {
+        return window.get().failureRate();
+    }
+
+    /**
+     * Closes the circuit and clears the window.
+     */
+    public void reset() {
+        clearWindow();
+        circuit.set(Circuit.CLOSED);
+    }
+
+    /**
+     * @return true if the call is a half open probe
+     */
+    private boolean acquire() {
+        while (true) {
+            final Circuit current = circuit.get();
+            if (current == Circuit.CLOSED) {
+                return false;
+            }
+            if (current.state == State.OPEN && isExpired(current)) {
+                if (circuit.compareAndSet(current, Circuit.PROBING)) {
+                    return true;
+                }
+                continue;
+            }
+            throw new CircuitBreakerOpenException(current == Circuit.PROBING ? "Circuit breaker is half open and a probe call is in progress" : "Circuit breaker is open");
+        }
+    }
+
+    private void onSuccess(final boolean probe) {
+        if (probe) {
+            clearWindow();
+            circuit.compareAndSet(Circuit.PROBING, Circuit.CLOSED);
+        } else {
+            window.get().record(SUCCESS);
+        }
+    }
+
+    private void onFailure(final boolean probe) {
+        if (probe) {
+            circuit.compareAndSet(Circuit.PROBING, Circuit.open(ticker.getAsLong()));
+        } else {
+            final Window current = window.get();
+            if (current.record(FAILURE) && window.get() == current) {
+                circuit.compareAndSet(Circuit.CLOSED, Circuit.open(ticker.getAsLong()));
+            }
+        }
+    }
+
+    /**
+     * Replaces the window with an empty one. Calls still recording into the old window do not affect the new one.
+     */
+    private void clearWindow() {
+        window.set(new Window(windowSize));
+    }
+
+    private boolean isExpired(final Circuit current) {
+        return current == Circuit.OPEN_EXPIRED || ticker.getAsLong() - current.openedAt >= openDurationNanos;
+    }
+
+    private static boolean isBadRequest(final Exception e) {
+        if (e instanceof ValidationException) {
+            return true;
+        }
+        for (Class<?> type = e.getClass(); type != null; type = type.getSuperclass()) {
+            if (HYSTRIX_BAD_REQUEST.equals(type.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The outcomes of the last calls in a ring buffer, with a count of the failures in it. A window is never cleared in place, it is replaced as a whole, so that its count always matches its
+     * buffer.
+     */
+    private final class Window {
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong recorded = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        Window(final int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        /**
+         * @return true if the window is full and its failure rate has reached the threshold
+         */
+        boolean record(final int outcome) {
+            final long index = recorded.getAndIncrement();
+            final int previous = outcomes.getAndSet((int) (index % windowSize), outcome);
+            final int delta = (outcome == FAILURE ? 1 : 0) - (previous == FAILURE ? 1 : 0);
+            final int failed = delta == 0 ? failures.get() : failures.addAndGet(delta);
+            return index + 1 >= windowSize && failed >= failureRateThreshold * windowSize;
+        }
+
+        double failureRate() {
+            final long calls = Math.min(recorded.get(), windowSize);
+            return calls == 0 ? 0 : (double) failures.get() / calls;
+        }
+    }
+
+    /**
+     * The state of the circuit and, when open, the time it opened. Instances are compared by identity so that transitions can be made with CAS.
+     */
+    private static final class Circuit {
+        static final Circuit CLOSED = new Circuit(State.CLOSED, 0);
+        static final Circuit PROBING = new Circuit(State.HALF_OPEN, 0);
+        static final Circuit OPEN_EXPIRED = new Circuit(State.OPEN, 0);
+
+        final State state;
+        final long openedAt;
+
+        private Circuit(final State state, final long openedAt) {
+            this.state = state;
+            this.openedAt = openedAt;
+        }
+
+        static Circuit open(final long now) {
+            return new Circuit(State.OPEN, now);
+        }
+    }
+}
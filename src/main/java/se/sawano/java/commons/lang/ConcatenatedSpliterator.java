@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Concatenates a number of spliterators. Splitting divides the spliterators between the halves until only one is left, after which that spliterator is split.
+ *
+ * @param <T>
+ *         the type of the elements
+ */
+final class ConcatenatedSpliterator<T> implements Spliterator<T> {
+
+    private final Spliterator<T>[] parts;
+    private int from;
+    private final int to;
+    private final int characteristics;
+
+    ConcatenatedSpliterator(final Spliterator<T>[] parts, final int from, final int to, final int characteristics) {
+        this.parts = parts;
+        this.from = from;
+        this.to = to;
+        this.characteristics = characteristics;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        while (from < to) {
+            if (parts[from].tryAdvance(action)) {
+                return true;
+            }
+            ++from;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+        for (; from < to; ++from) {
+            parts[from].forEachRemaining(action);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        final int remaining = to - from;
+        if (remaining == 0) {
+            return null;
+        }
+        if (remaining == 1) {
+            return parts[from].trySplit();
+        }
+        final int mid = from + remaining / 2;
+        final Spliterator<T> prefix = new ConcatenatedSpliterator<>(parts, from, mid, characteristics);
+        from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (int i = from; i < to; ++i) {
+            size += parts[i].estimateSize();
+            if (size < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static se.sawano.java.commons.lang.Hashing.mix;
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+
+/**
+ * A lock-free Bloom filter over 64 bit hashes. A Bloom filter answers "have I seen this before?" using a constant amount of memory, at the cost of a small probability of false positives, i.e.
+ * answering yes for a value that has never been added. There are no false negatives.
+ *
+ * <p>The bits are kept in a {@code long[]} that is updated with compare-and-set, so a single filter can be shared by all threads of a parallel stream. The bit positions are derived from the
+ * hash using double hashing, see Kirsch and Mitzenmacher, "Less Hashing, Same Performance: Building a Better Bloom Filter".</p>
+ *
+ * <p>This class is thread safe</p>
+ *
+ * @see Streams#approximatelyDistinct(java.util.stream.Stream, java.util.function.Function, ConcurrentBloomFilter)
+ */
+public final class ConcurrentBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final LongAdder bitCount = new LongAdder();
+
+    private ConcurrentBloomFilter(final long bitSize, final int hashFunctions) {
+        isTrue(bitSize <= (long) Integer.MAX_VALUE * Long.SIZE, "Too many bits: %d", bitSize);
+        this.words = new AtomicLongArray((int) (bitSize / Long.SIZE));
+        this.bitSize = bitSize;
+        this.hashFunctions = hashFunctions;
+    }
+
+    /**
+     * Creates a filter sized for the given number of insertions and false positive probability.
+     *
+     * @param expectedInsertions
+     *         the number of distinct values expected to be added, must be positive
+     * @param fpp
+     *         the desired false positive probability once {@code expectedInsertions} values have been added, must be greater than 0 and less than 1
+     *
+     * @return the new filter
+     */
+    public static ConcurrentBloomFilter create(final long expectedInsertions, final double fpp) {
+        isTrue(expectedInsertions > 0, "Expected insertions must be positive: %d", expectedInsertions);
+        isTrue(fpp > 0 && fpp < 1, "False positive probability must be between 0 and 1: %f", fpp);
+        final double ln2 = Math.log(2);
+        final long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2));
+        final long bitSize = Math.max(Long.SIZE, (bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+        final int hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * ln2));
+        return new ConcurrentBloomFilter(bitSize, hashFunctions);
+    }
+
+    /**
+     * Adds a hash to the filter.
+     *
+     * @param hash
+     *         the hash to add
+     *
+     * @return true if the hash was definitely not in the filter, false if it might already have been added
+     */
+    public boolean put(final long hash) {
+        final long h1 = mix(hash);
+        final long h2 = mix(h1 ^ hash) | 1;
+        boolean changed = false;
+        long combined = h1;
+        for (int i = 0; i < hashFunctions; ++i) {
+            changed |= set((combined & Long.MAX_VALUE) % bitSize);
+            combined += h2;
+        }
+        return changed;
+    }
+
+    /**
+     * @param hash
+     *         the hash to look for
+     *
+     * @return true if the hash might have been added, false if it has definitely not been added
+     */
+    public boolean mightContain(final long hash) {
+        final long h1 = mix(hash);
+        final long h2 = mix(h1 ^ hash) | 1;
+        long combined = h1;
+        for (int i = 0; i < hashFunctions; ++i) {
+            final long bit = (combined & Long.MAX_VALUE) % bitSize;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += h2;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bits in the filter
+     */
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * @return the number of bits set for each added hash
+     */
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * @return the approximate number of bytes used by the bits of the filter
+     */
+    public long memoryFootprint() {
+        return bitSize / Byte.SIZE;
+    }
+
+    /**
+     * @return the fraction of bits that are set, between 0 and 1
+     */
+    public double fillRatio() {
+        return (double) bitCount.sum() / bitSize;
+    }
+
+    /**
+     * @return the probability of a false positive given the current fill ratio
+     */
+    public double expectedFpp() {
+        return Math.pow(fillRatio(), hashFunctions);
+    }
+
+    private boolean set(final long bit) {
+        final int index = (int) (bit >>> 6);
+        final long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, word, word | mask));
+        bitCount.increment();
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentBloomFilter{" +
+                "bitSize=" + bitSize +
+                ", hashFunctions=" + hashFunctions +
+                ", fillRatio=" + fillRatio() +
+                '}';
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.StreamSupport;
+
+/**
+ * A spliterator that keeps one element per key. How the keys are tracked is decided when the spliterator is first split, i.e. when it is known to be traversed by a parallel stream, rather than
+ * when it is created:
+ * <ul>
+ * <li>If it is traversed without being split the keys are kept in a plain set and the first element in encounter order is kept for each key.</li>
+ * <li>If an {@link #ORDERED} source is split the whole source is first reduced in parallel to the first element per key, in the same way as {@link java.util.stream.Stream#distinct()} does for
+ * ordered parallel streams, and the result is then split.</li>
+ * <li>If an unordered source is split all splits share a concurrent set and which of the duplicates is kept is not defined.</li>
+ * </ul>
+ *
+ * @param <T>
+ *         the type of the elements
+ */
+final class DistinctSpliterator<T> implements Spliterator<T>, Consumer<T> {
+
+    private static final Object NULL_KEY = new Object();
+
+    private final Function<? super T, ?> keyExtractor;
+    private Spliterator<T> source;
+    private Set<Object> seen;
+    private boolean shared;
+    private boolean started;
+    private T current;
+
+    DistinctSpliterator(final Spliterator<T> source, final Function<? super T, ?> keyExtractor) {
+        this(source, keyExtractor, new HashSet<>(), false);
+    }
+
+    private DistinctSpliterator(final Spliterator<T> source, final Function<? super T, ?> keyExtractor, final Set<Object> seen, final boolean shared) {
+        this.source = source;
+        this.keyExtractor = keyExtractor;
+        this.seen = seen;
+        this.shared = shared;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        started = true;
+        if (seen == null) {
+            return source.tryAdvance(action);
+        }
+        while (source.tryAdvance(this)) {
+            final T t = current;
+            current = null;
+            if (seen.add(maskNull(keyExtractor.apply(t)))) {
+                action.accept(t);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+        started = true;
+        if (seen == null) {
+            source.forEachRemaining(action);
+            return;
+        }
+        final Set<Object> seen = this.seen;
+        source.forEachRemaining(t -> {
+            if (seen.add(maskNull(keyExtractor.apply(t)))) {
+                action.accept(t);
+            }
+        });
+    }
+
+    @Override
+    public void accept(final T t) {
+        current = t;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (started) {
+            // The plain set is already in use by this thread
+            return null;
+        }
+        if (seen == null) {
+            return source.trySplit();
+        }
+        if (!shared) {
+            if (source.hasCharacteristics(ORDERED)) {
+                source = firstByKey(source, keyExtractor);
+                seen = null;
+                return source.trySplit();
+            }
+            seen = ConcurrentHashMap.newKeySet();
+            shared = true;
+        }
+        final Spliterator<T> prefix = source.trySplit();
+        return prefix == null ? null : new DistinctSpliterator<>(prefix, keyExtractor, seen, true);
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return seen == null ? source.characteristics() : source.characteristics() & ~(SIZED | SUBSIZED);
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+
+    private static <T> Spliterator<T> firstByKey(final Spliterator<T> source, final Function<? super T, ?> keyExtractor) {
+        final Collector<T, Map<Object, T>, Map<Object, T>> firstByKey = Collector.of(LinkedHashMap::new,
+                                                                                      (map, t) -> putIfAbsent(map, maskNull(keyExtractor.apply(t)), t),
+                                                                                      (left, right) -> {
+                                                                                          right.forEach((k, t) -> putIfAbsent(left, k, t));
+                                                                                          return left;
+                                                                                      });
+        return new ArrayList<>(StreamSupport.stream(source, true).collect(firstByKey).values()).spliterator();
+    }
+
+    private static Object maskNull(final Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private static <T> void putIfAbsent(final Map<Object, T> map, final Object key, final T t) {
+        // Map.putIfAbsent would replace a null element
+        if (!map.containsKey(key)) {
+            map.put(key, t);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A pass-through spliterator that stops handing out elements once a shared failure flag is set. All splits share the flag, so when one task of a parallel stream fails the other tasks stop
+ * traversing their part of the source after the element they are processing.
+ *
+ * <p>Since the traversal may end early the spliterator is never {@link #SIZED} or {@link #SUBSIZED}.</p>
+ *
+ * @param <T>
+ *         the type of the elements
+ */
+final class FailFastSpliterator<T> implements Spliterator<T> {
+
+    private final Spliterator<T> source;
+    private final AtomicBoolean failed;
+
+    FailFastSpliterator(final Spliterator<T> source, final AtomicBoolean failed) {
+        this.source = source;
+        this.failed = failed;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        return !failed.get() && source.tryAdvance(action);
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+        while (!failed.get() && source.tryAdvance(action)) {
+            // the flag is checked before every element
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (failed.get()) {
+            return null;
+        }
+        final Spliterator<T> prefix = source.trySplit();
+        return prefix == null ? null : new FailFastSpliterator<>(prefix, failed);
+    }
+
+    @Override
+    public long estimateSize() {
+        return failed.get() ? 0 : source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & ~(SIZED | SUBSIZED);
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import static se.sawano.java.commons.lang.Hashing.mix;
+
+/**
+ * A count-min sketch of 4-bit counters that estimates how often keys have been seen, as used by the TinyLFU admission policy. Each key maps to one counter in each of four rows and the estimate is
+ * the minimum of them. When the number of increments reaches ten times the maximum cache size all counters are halved, so that the sketch forgets old popularity.
+ *
+ * <p>This class is not thread safe</p>
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0x97cb3127L, 0xb8da4a1fL, 0x66f3d8b5L, 0x0c1d2f73L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(final int maxSize) {
+        final int capacity = Integer.highestOneBit(Math.max(16, Math.min(maxSize, 1 << 28)) - 1) << 1;
+        this.table = new long[capacity / 4];
+        this.mask = table.length - 1;
+        this.sampleSize = (int) Math.min(10L * maxSize, Integer.MAX_VALUE);
+    }
+
+    int frequency(final int hashCode) {
+        final long hash = mix(hashCode);
+        int frequency = 15;
+        for (int depth = 0; depth < 4; ++depth) {
+            frequency = Math.min(frequency, (int) (table[index(hash, depth)] >>> offset(hash, depth)) & 15);
+        }
+        return frequency;
+    }
+
+    void increment(final int hashCode) {
+        final long hash = mix(hashCode);
+        boolean added = false;
+        for (int depth = 0; depth < 4; ++depth) {
+            final int index = index(hash, depth);
+            final int offset = offset(hash, depth);
+            if (((table[index] >>> offset) & 15) < 15) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; ++i) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int index(final long hash, final int depth) {
+        return (int) mix(hash + SEEDS[depth]) & mask;
+    }
+
+    private static int offset(final long hash, final int depth) {
+        return (int) ((hash >>> (depth << 2)) & 15) << 2;
+    }
+}
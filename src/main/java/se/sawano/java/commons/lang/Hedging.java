@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Hedged calls for latency sensitive reads: if a call has not completed within the hedge delay, a backup call, a hedge, is started, e.g. against another replica, and the first result that arrives
+ * is used while the other calls are cancelled and interrupted:
+ * <pre>
+ * final Hedging hedging = Hedging.adaptive(Duration.ofMillis(50), 1);
+ * final Row row = hedging.call(() -&gt; replicas.next().read(key));
+ * </pre>
+ * <p>The hedge delay is either fixed, or adaptive, in which case it is the 95th percentile of the latencies of the first attempts of recent calls. The first attempt is sampled whether it wins,
+ * loses or fails; if it is cancelled because a hedge won, the time it had been running is sampled as a lower bound of its latency. Sampling only the winners would bias the percentile towards
+ * the fast hedges and make the delay drift far down. An adaptive delay means that roughly one call in twenty is hedged, a little more since the lower bounds still bias the percentile slightly
+ * downwards, which cuts the tail latency caused by occasional slow replicas at the cost of a few percent extra load.</p>
+ *
+ * <p>If an attempt fails, the next hedge, if any, is started right away. A call fails only when every attempt has failed, with the exception of the first attempt and the exceptions of the others
+ * added as suppressed exceptions. How often hedges fired and which attempt won is available through {@link #statistics()}.</p>
+ *
+ * <p>The supplier must be safe to call more than once concurrently, i.e. idempotent.</p>
+ *
+ * <p>This class is thread safe</p>
+ */
+public final class Hedging {
+
+    private static final int SAMPLES = 256;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    private final int maxHedges;
+    private final boolean adaptive;
+    private final AtomicLongArray latencies;
+    private final AtomicLong latencyCount = new AtomicLong();
+    private volatile long hedgeDelayNanos;
+    private final LongAdder callCount = new LongAdder();
+    private final LongAdder hedgedCallCount = new LongAdder();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final AtomicLongArray winCounts;
+
+    private Hedging(final Duration hedgeDelay, final int maxHedges, final boolean adaptive) {
+        this.hedgeDelayNanos = hedgeDelay.toNanos();
+        this.maxHedges = maxHedges;
+        this.adaptive = adaptive;
+        this.latencies = adaptive ? new AtomicLongArray(SAMPLES) : null;
+        this.winCounts = new AtomicLongArray(maxHedges + 1);
+    }
+
+    /**
+     * Creates a hedging with a fixed hedge delay.
+     *
+     * @param hedgeDelay
+     *         the time to wait for an attempt before starting a hedge, not negative
+     * @param maxHedges
+     *         the maximum number of hedges per call, must be positive
+     *
+     * @return the hedging
+     */
+    public static Hedging of(final Duration hedgeDelay, final int maxHedges) {
+        validate(hedgeDelay, maxHedges);
+        return new Hedging(hedgeDelay, maxHedges, false);
+    }
+
+    /**
+     * Creates a hedging with a hedge delay that adapts to the 95th percentile of the latencies of the first attempts of the most recent calls.
+     *
+     * <p>Since the first attempts of hedged calls are sampled as lower bounds, the delay adapts quickly downwards but rises only gradually when it is too low. Prefer an initial delay that is
+     * rather too high than too low.</p>
+     *
+     * @param initialDelay
+     *         the hedge delay to use until enough latencies have been observed, not negative
+     * @param maxHedges
+     *         the maximum number of hedges per call, must be positive
+     *
+     * @return the hedging
+     */
+    public static Hedging adaptive(final Duration initialDelay, final int maxHedges) {
+        validate(initialDelay, maxHedges);
+        return new Hedging(initialDelay, maxHedges, true);
+    }
+
+    /**
+     * Makes a hedged call with a fixed hedge delay, without keeping statistics. See {@link #call(ThrowableSupplier, Executor)}.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param hedgeDelay
+     *         the time to wait for an attempt before starting a hedge, not negative
+     * @param maxHedges
+     *         the maximum number of hedges, must be positive
+     * @param executor
+     *         the executor to run the attempts in, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the first successful attempt
+     *
+     * @throws Exception
+     *         the exception of the first attempt if all attempts failed, or an {@link InterruptedException} if the calling thread is interrupted
+     */
+    public static <T> T call(final ThrowableSupplier<? extends T> supplier, final Duration hedgeDelay, final int maxHedges, final Executor executor) throws Exception {
+        return of(hedgeDelay, maxHedges).call(supplier, executor);
+    }
+
+    /**
+     * Makes a hedged call, running the attempts in the default executor for blocking calls. See {@link #call(ThrowableSupplier, Executor)}.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the first successful attempt
+     *
+     * @throws Exception
+     *         the exception of the first attempt if all attempts failed, or an {@link InterruptedException} if the calling thread is interrupted
+     */
+    public <T> T call(final ThrowableSupplier<? extends T> supplier) throws Exception {
+        return call(supplier, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Makes a hedged call. The supplier is called in the executor and, every time the hedge delay passes without a result, it is called again until the max number of hedges have been started. The
+     * calling thread waits for the first successful attempt and cancels, and interrupts, the remaining attempts.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param executor
+     *         the executor to run the attempts in, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the first successful attempt
+     *
+     * @throws Exception
+     *         the exception of the first attempt if all attempts failed, or an {@link InterruptedException} if the calling thread is interrupted
+     */
+    public <T> T call(final ThrowableSupplier<? extends T> supplier, final Executor executor) throws Exception {
+        notNull(supplier);
+        notNull(executor);
+        final long delay = hedgeDelayNanos;
+        final BlockingQueue<Attempt<T>> completed = new LinkedBlockingQueue<>();
+        final List<Attempt<T>> started = new ArrayList<>(maxHedges + 1);
+        int failures = 0;
+        try {
+            long nextHedgeAt = start(supplier, executor, completed, started) + delay;
+            while (true) {
+                final Attempt<T> attempt;
+                if (started.size() > maxHedges) {
+                    attempt = completed.take();
+                } else {
+                    attempt = completed.poll(nextHedgeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (attempt == null) {
+                        nextHedgeAt = start(supplier, executor, completed, started) + delay;
+                        continue;
+                    }
+                }
+                try {
+                    final T result = attempt.get();
+                    onSuccess(attempt, started.size());
+                    return result;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    ++failures;
+                }
+                if (failures == started.size()) {
+                    if (started.size() > maxHedges) {
+                        onFailure(started.size());
+                        throw giveUp(started);
+                    }
+                    nextHedgeAt = start(supplier, executor, completed, started) + delay;
+                }
+            }
+        } finally {
+            if (adaptive) {
+                observe(started.get(0).latency());
+            }
+            for (final Attempt<T> attempt : started) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return the current statistics of this hedging
+     */
+    public HedgingStatistics statistics() {
+        final long[] wins = new long[winCounts.length()];
+        for (int i = 0; i < wins.length; ++i) {
+            wins[i] = winCounts.get(i);
+        }
+        return new HedgingStatistics(callCount.sum(), hedgedCallCount.sum(), hedgeCount.sum(), failureCount.sum(), wins, hedgeDelayNanos);
+    }
+
+    private <T> long start(final ThrowableSupplier<? extends T> supplier, final Executor executor, final BlockingQueue<Attempt<T>> completed, final List<Attempt<T>> started) {
+        final Attempt<T> attempt = new Attempt<>(supplier, started.size(), completed);
+        started.add(attempt);
+        executor.execute(attempt);
+        return attempt.startedAt;
+    }
+
+    private void onSuccess(final Attempt<?> winner, final int attempts) {
+        record(attempts);
+        winCounts.incrementAndGet(winner.index);
+    }
+
+    private void onFailure(final int attempts) {
+        record(attempts);
+        failureCount.increment();
+    }
+
+    private void record(final int attempts) {
+        callCount.increment();
+        if (attempts > 1) {
+            hedgedCallCount.increment();
+            hedgeCount.add(attempts - 1);
+        }
+    }
+
+    private void observe(final long latency) {
+        final long count = latencyCount.getAndIncrement();
+        latencies.set((int) (count % SAMPLES), latency);
+        if (count + 1 >= MIN_SAMPLES && (count + 1) % RECOMPUTE_INTERVAL == 0) {
+            final int size = (int) Math.min(count + 1, SAMPLES);
+            final long[] sorted = new long[size];
+            for (int i = 0; i < size; ++i) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            hedgeDelayNanos = sorted[(int) Math.ceil(0.95 * size) - 1];
+        }
+    }
+
+    private static Exception giveUp(final List<? extends Attempt<?>> started) {
+        final Exception first = started.get(0).failure();
+        for (int i = 1; i < started.size(); ++i) {
+            first.addSuppressed(started.get(i).failure());
+        }
+        return first;
+    }
+
+    private static void validate(final Duration hedgeDelay, final int maxHedges) {
+        notNull(hedgeDelay);
+        isTrue(!hedgeDelay.isNegative(), "Hedge delay must not be negative: %s", hedgeDelay);
+        isTrue(maxHedges > 0, "Max hedges must be positive: %d", maxHedges);
+    }
+
+    private static final class Attempt<T> extends FutureTask<T> {
+        private final int index;
+        private final long startedAt = System.nanoTime();
+        private final BlockingQueue<Attempt<T>> completed;
+        private volatile long completedAt;
+
+        Attempt(final ThrowableSupplier<? extends T> supplier, final int index, final BlockingQueue<Attempt<T>> completed) {
+            super(supplier::get);
+            this.index = index;
+            this.completed = completed;
+        }
+
+        /**
+         * @return the exception of this attempt, which must have failed
+         */
+        Exception failure() {
+            try {
+                get();
+                throw new IllegalStateException("Attempt did not fail");
+            } catch (ExecutionException e) {
+                return (Exception) e.getCause();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Attempt is not done", e);
+            }
+        }
+
+        /**
+         * @return the latency of this attempt if it has completed, otherwise the time elapsed so far, which is a lower bound of its latency
+         */
+        long latency() {
+            final long end = completedAt;
+            return (end == 0 ? System.nanoTime() : end) - startedAt;
+        }
+
+        @Override
+        protected void done() {
+            completedAt = System.nanoTime();
+            completed.add(this);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static se.sawano.java.commons.lang.validate.Validate.inclusiveBetween;
+
+/**
+ * A point in time snapshot of the statistics of a {@link Hedging}.
+ *
+ * <p>This class is immutable and thread safe</p>
+ */
+public final class HedgingStatistics {
+
+    private final long callCount;
+    private final long hedgedCallCount;
+    private final long hedgeCount;
+    private final long failureCount;
+    private final long[] winCounts;
+    private final long hedgeDelayNanos;
+
+    HedgingStatistics(final long callCount, final long hedgedCallCount, final long hedgeCount, final long failureCount, final long[] winCounts, final long hedgeDelayNanos) {
+        this.callCount = callCount;
+        this.hedgedCallCount = hedgedCallCount;
+        this.hedgeCount = hedgeCount;
+        this.failureCount = failureCount;
+        this.winCounts = winCounts;
+        this.hedgeDelayNanos = hedgeDelayNanos;
+    }
+
+    /**
+     * @return the number of completed calls, successful or not
+     */
+    public long callCount() {
+        return callCount;
+    }
+
+    /**
+     * @return the number of calls that started at least one hedge
+     */
+    public long hedgedCallCount() {
+        return hedgedCallCount;
+    }
+
+    /**
+     * @return the total number of hedges started
+     */
+    public long hedgeCount() {
+        return hedgeCount;
+    }
+
+    /**
+     * @return the ratio of calls that started at least one hedge, or 0 if there have been no calls
+     */
+    public double hedgeRate() {
+        return callCount == 0 ? 0 : (double) hedgedCallCount / callCount;
+    }
+
+    /**
+     * @return the number of calls where every attempt failed
+     */
+    public long failureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @param attempt
+     *         the attempt, where 0 is the first call and 1 is the first hedge, between 0 and max hedges
+     *
+     * @return the number of calls where the given attempt returned the result
+     */
+    public long winCount(final int attempt) {
+        inclusiveBetween(0, winCounts.length - 1, attempt, "Attempt must be between 0 and %d: %d", winCounts.length - 1, attempt);
+        return winCounts[attempt];
+    }
+
+    /**
+     * @return the delay before a hedge is started, as of when this snapshot was taken
+     */
+    public Duration hedgeDelay() {
+        return Duration.ofNanos(hedgeDelayNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingStatistics{" +
+                "callCount=" + callCount +
+                ", hedgedCallCount=" + hedgedCallCount +
+                ", hedgeCount=" + hedgeCount +
+                ", failureCount=" + failureCount +
+                ", winCounts=" + Arrays.toString(winCounts) +
+                ", hedgeDelay=" + hedgeDelay() +
+                '}';
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A pass-through spliterator that records the elements of a source in {@link StageMetrics}. During {@link #forEachRemaining(Consumer)} elements are counted locally and published once the traversal
+ * ends. With {@link #tryAdvance(Consumer)} the count is published per element, but the thread distribution only every {@value #FLUSH_THRESHOLD} elements and when the source is exhausted.
+ *
+ * <p>Every {@code sampleInterval}th element is timed from the moment the previous element has been handed on, or from the next call to {@link #tryAdvance(Consumer)}, until the element arrives from
+ * the source. A sample interval of 0 turns sampling off, in which case no clock is read.</p>
+ *
+ * @param <T>
+ *         the type of the elements
+ */
+final class InstrumentedSpliterator<T> implements Spliterator<T>, Consumer<T> {
+
+    private static final int FLUSH_THRESHOLD = 1 << 10;
+
+    private final Spliterator<T> source;
+    private final StageMetrics metrics;
+    private final int sampleInterval;
+    private Consumer<? super T> downstream;
+    private boolean pushing;
+    private long count;
+    private long unpublishedThreadCount;
+    private int untilSample;
+    private boolean sampleNext;
+    private boolean timing;
+    private long sampleStart;
+
+    InstrumentedSpliterator(final Spliterator<T> source, final StageMetrics metrics, final int sampleInterval) {
+        this.source = source;
+        this.metrics = metrics;
+        this.sampleInterval = sampleInterval;
+        this.untilSample = sampleInterval;
+        this.sampleNext = sampleInterval != 0;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        if (sampleNext) {
+            sampleNext = false;
+            startTiming();
+        }
+        downstream = action;
+        final boolean advanced;
+        try {
+            advanced = source.tryAdvance(this);
+        } finally {
+            downstream = null;
+        }
+        if (advanced) {
+            metrics.add(count);
+            unpublishedThreadCount += count;
+            count = 0;
+            if (unpublishedThreadCount >= FLUSH_THRESHOLD) {
+                publishThreadCount();
+            }
+        }
+        else {
+            timing = false;
+            publishThreadCount();
+        }
+        return advanced;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+        if (sampleNext) {
+            sampleNext = false;
+            startTiming();
+        }
+        downstream = action;
+        pushing = true;
+        try {
+            source.forEachRemaining(this);
+        } finally {
+            downstream = null;
+            pushing = false;
+            timing = false;
+            metrics.add(count);
+            unpublishedThreadCount += count;
+            count = 0;
+            publishThreadCount();
+        }
+    }
+
+    @Override
+    public void accept(final T t) {
+        if (timing) {
+            metrics.sample(System.nanoTime() - sampleStart);
+            timing = false;
+        }
+        ++count;
+        downstream.accept(t);
+        if (sampleInterval != 0 && --untilSample == 0) {
+            untilSample = sampleInterval;
+            if (pushing) {
+                startTiming();
+            }
+            else {
+                sampleNext = true;
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        final Spliterator<T> prefix = source.trySplit();
+        return prefix == null ? null : new InstrumentedSpliterator<>(prefix, metrics, sampleInterval);
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return source.getExactSizeIfKnown();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics();
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+
+    private void startTiming() {
+        timing = true;
+        sampleStart = System.nanoTime();
+    }
+
+    private void publishThreadCount() {
+        if (unpublishedThreadCount > 0) {
+            metrics.addThread(unpublishedThreadCount);
+            unpublishedThreadCount = 0;
+        }
+    }
+}
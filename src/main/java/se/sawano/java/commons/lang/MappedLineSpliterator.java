@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the lines of a region of a (memory-mapped) buffer. Lines are terminated by {@code '\n'}, optionally preceded by {@code '\r'}, and are handed out as lazily decoded {@link
+ * ByteLine} views. Splitting is done at the first line break after the middle of the region, so the work is divided evenly across threads.
+ *
+ * <p>Only charsets where the byte {@code 0x0A} is always a line feed can be used, e.g. UTF-8, US-ASCII and ISO-8859-1.</p>
+ */
+final class MappedLineSpliterator implements Spliterator<CharSequence> {
+
+    private final ByteBuffer buffer;
+    private final Charset charset;
+    private final boolean singleByte;
+    private int index;
+    private final int fence;
+
+    MappedLineSpliterator(final ByteBuffer buffer, final int index, final int fence, final Charset charset, final boolean singleByte) {
+        this.buffer = buffer;
+        this.index = index;
+        this.fence = fence;
+        this.charset = charset;
+        this.singleByte = singleByte;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super CharSequence> action) {
+        if (index >= fence) {
+            return false;
+        }
+        action.accept(nextLine());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super CharSequence> action) {
+        while (index < fence) {
+            action.accept(nextLine());
+        }
+    }
+
+    @Override
+    public Spliterator<CharSequence> trySplit() {
+        final int mid = index + (fence - index) / 2;
+        int split = mid;
+        while (split < fence && buffer.get(split) != '\n') {
+            ++split;
+        }
+        if (split >= fence - 1 || split < index) {
+            return null;
+        }
+        final MappedLineSpliterator prefix = new MappedLineSpliterator(buffer, index, split + 1, charset, singleByte);
+        index = split + 1;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    private CharSequence nextLine() {
+        final int start = index;
+        int end = start;
+        while (end < fence && buffer.get(end) != '\n') {
+            ++end;
+        }
+        index = end + 1;
+        if (end > start && buffer.get(end - 1) == '\r') {
+            --end;
+        }
+        return new ByteLine(buffer, start, end - start, charset, singleByte);
+    }
+}
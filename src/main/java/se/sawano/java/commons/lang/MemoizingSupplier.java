@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static se.sawano.java.commons.lang.Throwables.sneakyThrow;
+
+/**
+ * A supplier that caches the result of another supplier. The current result is kept in an immutable entry that is published with CAS, so reading a cached value never takes a lock. Loads that
+ * callers wait for are single-flight: the first caller installs a {@link FutureTask} and runs it in its own thread, concurrent callers wait for that task, so the same value is not loaded twice and
+ * no monitor is held while loading, which would pin the carrier of a virtual thread.
+ *
+ * <p>If the entry expires and {@code refreshAheadNanos} is positive, the first read after {@code expiresAt - refreshAheadNanos} starts a reload in the executor while readers keep getting the current
+ * entry. A failed background reload leaves the current entry in place, and the next read tries again.</p>
+ *
+ * <p>Every load, in the foreground or in the background, takes a sequence number when it starts and an entry is only replaced by an entry of a later load, so a slow background refresh never
+ * overwrites the result of a reload that started after it.</p>
+ *
+ * @param <T>
+ *         the type of the value
+ */
+final class MemoizingSupplier<T> implements ThrowableSupplier<T> {
+
+    private final ThrowableSupplier<? extends T> supplier;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+    private final boolean cacheExceptions;
+    private final Executor executor;
+    private final LongSupplier ticker;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicReference<Entry<T>> entry = new AtomicReference<>();
+    private final AtomicReference<FutureTask<T>> inFlight = new AtomicReference<>();
+
+    /**
+     * @param ttlNanos
+     *         the time to live of a result, or {@link Long#MAX_VALUE} for results that never expire
+     */
+    MemoizingSupplier(final ThrowableSupplier<? extends T> supplier, final long ttlNanos, final long refreshAheadNanos, final boolean cacheExceptions, final Executor executor,
+                      final LongSupplier ticker) {
+        this.supplier = supplier;
+        this.ttlNanos = ttlNanos;
+        this.refreshAheadNanos = refreshAheadNanos;
+        this.cacheExceptions = cacheExceptions;
+        this.executor = executor;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public T get() throws Exception {
+        final Entry<T> current = entry.get();
+        if (current != null) {
+            if (ttlNanos == Long.MAX_VALUE) {
+                return current.get();
+            }
+            final long now = ticker.getAsLong();
+            if (now - current.expiresAt < 0) {
+                if (refreshAheadNanos > 0 && now - current.expiresAt + refreshAheadNanos >= 0) {
+                    refreshInBackground();
+                }
+                return current.get();
+            }
+        }
+        return load();
+    }
+
+    private T load() throws Exception {
+        while (true) {
+            final FutureTask<T> running = inFlight.get();
+            if (running != null) {
+                return await(running);
+            }
+            final Entry<T> current = entry.get();
+            if (current != null && isValid(current)) {
+                return current.get();
+            }
+            final long sequence = loads.incrementAndGet();
+            final FutureTask<T> task = new FutureTask<>(() -> loadAndPublish(sequence));
+            if (inFlight.compareAndSet(null, task)) {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.compareAndSet(task, null);
+                }
+                return await(task);
+            }
+        }
+    }
+
+    private T loadAndPublish(final long sequence) throws Exception {
+        final T value;
+        try {
+            value = supplier.get();
+        } catch (Exception e) {
+            if (cacheExceptions) {
+                publish(new Entry<>(null, e, expiresAt(), sequence));
+            }
+            throw e;
+        }
+        publish(new Entry<>(value, null, expiresAt(), sequence));
+        return value;
+    }
+
+    private void publish(final Entry<T> loaded) {
+        while (true) {
+            final Entry<T> current = entry.get();
+            if (current != null && current.sequence > loaded.sequence) {
+                return;
+            }
+            if (entry.compareAndSet(current, loaded)) {
+                return;
+            }
+        }
+    }
+
+    private static <T> T await(final FutureTask<T> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw sneakyThrow(e.getCause());
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        final long sequence = loads.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    final T value = supplier.get();
+                    publish(new Entry<>(value, null, expiresAt(), sequence));
+                } catch (Exception e) {
+                    // Keep the current entry, the next read after the refresh point tries again
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private boolean isValid(final Entry<T> current) {
+        return ttlNanos == Long.MAX_VALUE || ticker.getAsLong() - current.expiresAt < 0;
+    }
+
+    private long expiresAt() {
+        if (ttlNanos == Long.MAX_VALUE) {
+            return 0;
+        }
+        return ticker.getAsLong() + ttlNanos;
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final Exception failure;
+        final long expiresAt;
+        final long sequence;
+
+        Entry(final T value, final Exception failure, final long expiresAt, final long sequence) {
+            this.value = value;
+            this.failure = failure;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+
+        T get() throws Exception {
+            if (failure != null) {
+                throw failure;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator that merges a number of sorted spliterators into one sorted sequence. A binary min-heap of source indices, ordered by the current head element of each source, selects the next
+ * element, so each element costs {@code O(log N)} comparisons for {@code N} sources. Only the head element of each source is buffered, and a source is not advanced until its previous head has been
+ * handed on. Elements that compare as equal are emitted in the order of their sources, i.e. the merge is stable.
+ *
+ * <p>A merge is inherently sequential, so this spliterator never splits.</p>
+ *
+ * @param <T>
+ *         the type of the elements
+ */
+final class MergeSpliterator<T> implements Spliterator<T>, Consumer<T> {
+
+    private final Spliterator<T>[] sources;
+    private final Comparator<? super T> comparator;
+    private final Object[] heads;
+    private final int[] heap;
+    private int heapSize;
+    private int pending = -1;
+    private boolean started;
+    private boolean pulled;
+
+    MergeSpliterator(final Spliterator<T>[] sources, final Comparator<? super T> comparator) {
+        this.sources = sources;
+        this.comparator = comparator;
+        this.heads = new Object[sources.length];
+        this.heap = new int[sources.length];
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        if (!started) {
+            start();
+        }
+        else if (pending >= 0) {
+            refill(pending);
+            pending = -1;
+        }
+        if (heapSize == 0) {
+            return false;
+        }
+        final int top = heap[0];
+        @SuppressWarnings("unchecked")
+        final T element = (T) heads[top];
+        heads[top] = null;
+        pending = top;
+        action.accept(element);
+        return true;
+    }
+
+    @Override
+    public void accept(final T t) {
+        heads[pending] = t;
+        pulled = true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = heapSize - (pending >= 0 ? 1 : 0);
+        for (final Spliterator<T> source : sources) {
+            size += source.estimateSize();
+            if (size < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        int characteristics = SIZED | NONNULL;
+        for (final Spliterator<T> source : sources) {
+            characteristics &= source.characteristics();
+        }
+        return characteristics | ORDERED;
+    }
+
+    private void start() {
+        started = true;
+        for (int i = 0; i < sources.length; ++i) {
+            if (pull(i)) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; --i) {
+            siftDown(i);
+        }
+    }
+
+    private void refill(final int source) {
+        if (!pull(source)) {
+            heap[0] = heap[--heapSize];
+        }
+        if (heapSize > 0) {
+            siftDown(0);
+        }
+    }
+
+    private boolean pull(final int source) {
+        final int previous = pending;
+        pending = source;
+        pulled = false;
+        sources[source].tryAdvance(this);
+        pending = previous;
+        return pulled;
+    }
+
+    private void siftDown(int index) {
+        final int source = heap[index];
+        final int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                ++child;
+            }
+            if (!less(heap[child], source)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = source;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean less(final int a, final int b) {
+        final int c = comparator.compare((T) heads[a], (T) heads[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * The operations of {@link Optional} as static methods on nullable references. Chains of {@link Optional#map(Function)} and {@link Optional#orElse(Object)} allocate an {@link Optional} per step
+ * unless the JIT compiler manages to inline the whole chain, which it often does not in deep call graphs. These methods never allocate, which makes them suitable for hot paths:
+ * <pre>
+ * final String city = Nullables.orElse(Nullables.map(Nullables.map(order, Order::customer), Customer::city), "unknown");
+ * </pre>
+ * instead of:
+ * <pre>
+ * final String city = Optional.ofNullable(order).map(Order::customer).map(Customer::city).orElse("unknown");
+ * </pre>
+ *
+ * @see Optionals
+ */
+public class Nullables {
+
+    private Nullables() {}
+
+    /**
+     * Applies a function to a value if it is not null. The same as {@link Optional#map(Function)}.
+     *
+     * @param value
+     *         the value, may be null
+     * @param mapper
+     *         the function to apply, not null
+     * @param <T>
+     *         the type of the value
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the result of the function, or null if the value is null
+     */
+    public static <T, R> R map(final T value, final Function<? super T, ? extends R> mapper) {
+        notNull(mapper);
+        return value == null ? null : mapper.apply(value);
+    }
+
+    /**
+     * Applies an {@link Optional} returning function to a value if it is not null. The same as {@link Optional#flatMap(Function)}, but the result is unwrapped to a nullable reference.
+     *
+     * @param value
+     *         the value, may be null
+     * @param mapper
+     *         the function to apply, not null and must not return null
+     * @param <T>
+     *         the type of the value
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the value of the optional returned by the function, or null if the value is null or the optional is empty
+     */
+    public static <T, R> R flatMap(final T value, final Function<? super T, ? extends Optional<? extends R>> mapper) {
+        notNull(mapper);
+        return value == null ? null : notNull(mapper.apply(value)).orElse(null);
+    }
+
+    /**
+     * Gets a value, or another value if it is null. The same as {@link Optional#orElse(Object)}.
+     *
+     * @param value
+     *         the value, may be null
+     * @param other
+     *         the value to return if the value is null, may be null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the value if it is not null, otherwise the other value
+     */
+    public static <T> T orElse(final T value, final T other) {
+        return value != null ? value : other;
+    }
+
+    /**
+     * Gets a value, or the result of a supplier if it is null. The same as {@link Optional#orElseGet(Supplier)}.
+     *
+     * @param value
+     *         the value, may be null
+     * @param other
+     *         the supplier of the value to return if the value is null, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the value if it is not null, otherwise the result of the supplier
+     */
+    public static <T> T orElseGet(final T value, final Supplier<? extends T> other) {
+        notNull(other);
+        return value != null ? value : other.get();
+    }
+
+    /**
+     * Gets a value, throwing an exception if it is null. Fails with the same exception and message as {@link Optionals#required(Optional)}.
+     *
+     * @param value
+     *         the value, may be null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the value
+     *
+     * @throws IllegalArgumentValidationException
+     *         if the value is null
+     */
+    public static <T> T required(final T value) {
+        isTrue(value != null, "No value present");
+        return value;
+    }
+
+    /**
+     * Gets a value, throwing an exception with the given message if it is null. See {@link Optionals#required(Optional, String)}.
+     *
+     * @param value
+     *         the value, may be null
+     * @param message
+     *         the exception message to use
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the value
+     *
+     * @throws IllegalArgumentValidationException
+     *         if the value is null
+     */
+    public static <T> T required(final T value, final String message) {
+        notNull(message);
+        isTrue(value != null, message);
+        return value;
+    }
+
+    /**
+     * Gets a value, throwing an exception with a formatted message if it is null. See {@link Optionals#required(Optional, String, Object...)}.
+     *
+     * @param value
+     *         the value, may be null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use
+     * @param values
+     *         the optional values for the formatted exception message
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the value
+     *
+     * @throws IllegalArgumentValidationException
+     *         if the value is null
+     */
+    public static <T> T required(final T value, final String message, final Object... values) {
+        notNull(message);
+        notNull(values);
+        isTrue(value != null, message, values);
+        return value;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.ObjDoubleConsumer;
+
+import static se.sawano.java.commons.lang.Hashing.mix;
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * A map from object keys to primitive {@code double} values. Values are never boxed, which makes this map suitable for summing per key in hot code. Keys are kept in an open-addressing
+ * table with linear probing. {@code null} is a valid key.
+ *
+ * <p>This class is not thread safe</p>
+ *
+ * @param <K>
+ *         the type of the keys
+ * @see Streams#summingDoubleBy(java.util.function.Function, java.util.function.ToDoubleFunction)
+ */
+public final class ObjectDoubleMap<K> {
+
+    private static final Object NULL_KEY = new Object();
+
+    private Object[] keys;
+    private double[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates an empty map.
+     */
+    public ObjectDoubleMap() {
+        this(8);
+    }
+
+    /**
+     * Creates an empty map that can hold the given number of keys without resizing.
+     *
+     * @param expectedSize
+     *         the expected number of keys, must not be negative
+     */
+    public ObjectDoubleMap(final int expectedSize) {
+        isTrue(expectedSize >= 0, "Expected size must not be negative: %d", expectedSize);
+        final int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new Object[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the map contains no keys
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key
+     *         the key to look for
+     *
+     * @return true if the map contains the key
+     */
+    public boolean containsKey(final Object key) {
+        return indexOf(mask(key)) >= 0;
+    }
+
+    /**
+     * @param key
+     *         the key to look for
+     *
+     * @return the value of the key, or 0 if the map does not contain the key
+     *
+     * @see #getOrDefault(Object, double)
+     */
+    public double get(final Object key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * @param key
+     *         the key to look for
+     * @param defaultValue
+     *         the value to return if the map does not contain the key
+     *
+     * @return the value of the key, or the default value if the map does not contain the key
+     */
+    public double getOrDefault(final Object key, final double defaultValue) {
+        final int index = indexOf(mask(key));
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key
+     *         the key
+     * @param value
+     *         the value
+     */
+    public void put(final K key, final double value) {
+        final Object masked = mask(key);
+        final int index = indexOf(masked);
+        if (index >= 0) {
+            values[index] = value;
+        }
+        else {
+            insert(~index, masked, value);
+        }
+    }
+
+    /**
+     * Adds a value to the value of a key, treating a missing key as 0.
+     *
+     * @param key
+     *         the key
+     * @param delta
+     *         the value to add
+     *
+     * @return the new value of the key
+     */
+    public double addTo(final K key, final double delta) {
+        final Object masked = mask(key);
+        final int index = indexOf(masked);
+        if (index >= 0) {
+            return values[index] += delta;
+        }
+        insert(~index, masked, delta);
+        return delta;
+    }
+
+    /**
+     * Sets the value of a key to the given value if the map does not contain the key, otherwise to the result of applying the function to the current and the given value.
+     *
+     * @param key
+     *         the key
+     * @param value
+     *         the value to set or combine with the current value
+     * @param function
+     *         the function combining the current and the given value, not null
+     *
+     * @return the new value of the key
+     */
+    public double merge(final K key, final double value, final DoubleBinaryOperator function) {
+        final Object masked = mask(key);
+        final int index = indexOf(masked);
+        if (index >= 0) {
+            return values[index] = function.applyAsDouble(values[index], value);
+        }
+        insert(~index, masked, value);
+        return value;
+    }
+
+    /**
+     * Merges all keys of another map into this map. See {@link #merge(Object, double, DoubleBinaryOperator)}.
+     *
+     * @param other
+     *         the map to merge, not null
+     * @param function
+     *         the function combining the values of keys that exist in both maps, not null
+     *
+     * @return this map
+     */
+    public ObjectDoubleMap<K> mergeAll(final ObjectDoubleMap<? extends K> other, final DoubleBinaryOperator function) {
+        notNull(other);
+        notNull(function);
+        final Object[] otherKeys = other.keys;
+        for (int i = 0; i < otherKeys.length; ++i) {
+            if (otherKeys[i] != null) {
+                final int index = indexOf(otherKeys[i]);
+                if (index >= 0) {
+                    values[index] = function.applyAsDouble(values[index], other.values[i]);
+                }
+                else {
+                    insert(~index, otherKeys[i], other.values[i]);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Performs an action for each key and value in the map.
+     *
+     * @param action
+     *         the action to perform, not null
+     */
+    public void forEach(final ObjDoubleConsumer<? super K> action) {
+        notNull(action);
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] != null) {
+                action.accept(unmask(keys[i]), values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of this map as a {@link Map} with boxed values
+     */
+    public Map<K, Double> toMap() {
+        final Map<K, Double> map = new HashMap<>(size * 2);
+        forEach(map::put);
+        return map;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ObjectDoubleMap)) {
+            return false;
+        }
+        final ObjectDoubleMap<?> that = (ObjectDoubleMap<?>) o;
+        if (size != that.size) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] != null) {
+                final int index = that.indexOf(keys[i]);
+                if (index < 0 || Double.doubleToLongBits(that.values[index]) != Double.doubleToLongBits(values[i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] != null) {
+                hash += Objects.hashCode(unmask(keys[i])) ^ Double.hashCode(values[i]);
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("{");
+        forEach((k, v) -> builder.append(builder.length() > 1 ? ", " : "").append(k).append('=').append(v));
+        return builder.append('}').toString();
+    }
+
+    /**
+     * @return the index of the key, or the bitwise complement of the free slot where it would be inserted
+     */
+    private int indexOf(final Object masked) {
+        int i = (int) mix(masked.hashCode()) & mask;
+        while (true) {
+            final Object key = keys[i];
+            if (key == null) {
+                return ~i;
+            }
+            if (key.equals(masked)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void insert(final int index, final Object masked, final double value) {
+        keys[index] = masked;
+        values[index] = value;
+        if (++size > (mask + 1) >> 1) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        final Object[] oldKeys = keys;
+        final double[] oldValues = values;
+        final int capacity = oldKeys.length << 1;
+        isTrue(capacity > 0, "Map is too large");
+        keys = new Object[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                final int index = ~indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static Object mask(final Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K unmask(final Object key) {
+        return key == NULL_KEY ? null : (K) key;
+    }
+}
@@ -18,11 +18,29 @@ package se.sawano.java.commons.lang;
 
 import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.noNullElements;
 import static se.sawano.java.commons.lang.validate.Validate.notNull;
 
 public class Optionals {
@@ -140,6 +158,276 @@ public class Optionals {
         return optional.get();
     }
 
+    /**
+     * Gets the value of an {@link OptionalInt}, throwing an exception if no value is present. See {@link #required(Optional)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static int required(final OptionalInt optional) {
+        notNull(optional);
+        isTrue(optional.isPresent(), "No value present");
+
+        return optional.getAsInt();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalInt}, throwing an exception with the given message if no value is present. See {@link #required(Optional, String)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param message
+     *         the exception message to use
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static int required(final OptionalInt optional, final String message) {
+        notNull(optional);
+        notNull(message);
+        isTrue(optional.isPresent(), message);
+
+        return optional.getAsInt();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalInt}, throwing an exception with a formatted message if no value is present. See {@link #required(Optional, String, Object...)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use
+     * @param values
+     *         the optional values for the formatted exception message
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static int required(final OptionalInt optional, final String message, final Object... values) {
+        notNull(optional);
+        notNull(message);
+        notNull(values);
+        isTrue(optional.isPresent(), message, values);
+
+        return optional.getAsInt();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalInt}, throwing an exception if no value is present. The exception message is only created if no value is present, which is useful when the message
+     * is expensive to build:
+     * <pre>
+     * final int value = Optionals.required(opt, () -&gt; "Value is missing for " + describe(request));
+     * </pre>
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param messageSupplier
+     *         the supplier of the exception message to use, not null
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static int required(final OptionalInt optional, final Supplier<String> messageSupplier) {
+        notNull(optional);
+        notNull(messageSupplier);
+        if (!optional.isPresent()) {
+            isTrue(false, messageSupplier.get());
+        }
+
+        return optional.getAsInt();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalLong}, throwing an exception if no value is present. See {@link #required(Optional)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static long required(final OptionalLong optional) {
+        notNull(optional);
+        isTrue(optional.isPresent(), "No value present");
+
+        return optional.getAsLong();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalLong}, throwing an exception with the given message if no value is present. See {@link #required(Optional, String)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param message
+     *         the exception message to use
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static long required(final OptionalLong optional, final String message) {
+        notNull(optional);
+        notNull(message);
+        isTrue(optional.isPresent(), message);
+
+        return optional.getAsLong();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalLong}, throwing an exception with a formatted message if no value is present. See {@link #required(Optional, String, Object...)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use
+     * @param values
+     *         the optional values for the formatted exception message
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static long required(final OptionalLong optional, final String message, final Object... values) {
+        notNull(optional);
+        notNull(message);
+        notNull(values);
+        isTrue(optional.isPresent(), message, values);
+
+        return optional.getAsLong();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalLong}, throwing an exception if no value is present. The exception message is only created if no value is present, which is useful when the message
+     * is expensive to build:
+     * <pre>
+     * final long value = Optionals.required(opt, () -&gt; "Value is missing for " + describe(request));
+     * </pre>
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param messageSupplier
+     *         the supplier of the exception message to use, not null
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static long required(final OptionalLong optional, final Supplier<String> messageSupplier) {
+        notNull(optional);
+        notNull(messageSupplier);
+        if (!optional.isPresent()) {
+            isTrue(false, messageSupplier.get());
+        }
+
+        return optional.getAsLong();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalDouble}, throwing an exception if no value is present. See {@link #required(Optional)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static double required(final OptionalDouble optional) {
+        notNull(optional);
+        isTrue(optional.isPresent(), "No value present");
+
+        return optional.getAsDouble();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalDouble}, throwing an exception with the given message if no value is present. See {@link #required(Optional, String)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param message
+     *         the exception message to use
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static double required(final OptionalDouble optional, final String message) {
+        notNull(optional);
+        notNull(message);
+        isTrue(optional.isPresent(), message);
+
+        return optional.getAsDouble();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalDouble}, throwing an exception with a formatted message if no value is present. See {@link #required(Optional, String, Object...)}.
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use
+     * @param values
+     *         the optional values for the formatted exception message
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static double required(final OptionalDouble optional, final String message, final Object... values) {
+        notNull(optional);
+        notNull(message);
+        notNull(values);
+        isTrue(optional.isPresent(), message, values);
+
+        return optional.getAsDouble();
+    }
+
+    /**
+     * Gets the value of an {@link OptionalDouble}, throwing an exception if no value is present. The exception message is only created if no value is present, which is useful when the message
+     * is expensive to build:
+     * <pre>
+     * final double value = Optionals.required(opt, () -&gt; "Value is missing for " + describe(request));
+     * </pre>
+     *
+     * @param optional
+     *         the optional to get the value from
+     * @param messageSupplier
+     *         the supplier of the exception message to use, not null
+     *
+     * @return the value of the optional
+     *
+     * @throws IllegalArgumentValidationException
+     *         if no value is present
+     */
+    public static double required(final OptionalDouble optional, final Supplier<String> messageSupplier) {
+        notNull(optional);
+        notNull(messageSupplier);
+        if (!optional.isPresent()) {
+            isTrue(false, messageSupplier.get());
+        }
+
+        return optional.getAsDouble();
+    }
+
     /**
      * Create a stream from an optional. If a value is present in the given optional then a stream with a single value will be returned. If no value is present then an empty stream will be returned.
      * This can be used to convert a stream of optional values to a stream of values:
@@ -154,6 +442,8 @@ public class Optionals {
      *         the type of the value in the optional
      *
      * @return the created stream
+     *
+     * @see #flatten(Stream)
      */
     // This will become obsolete once Java 9 is released
     public static <T> Stream<T> stream(final Optional<T> optional) {
@@ -161,4 +451,358 @@ public class Optionals {
         return optional.map(Stream::of).orElseGet(Stream::empty);
     }
 
+    /**
+     * Creates an {@link IntStream} from an {@link OptionalInt} without boxing. The stream contains the value if one is present, otherwise it is empty. See {@link #stream(Optional)}.
+     *
+     * @param optional
+     *         the optional to create a stream from
+     *
+     * @return the created stream
+     */
+    public static IntStream stream(final OptionalInt optional) {
+        notNull(optional);
+        return optional.isPresent() ? IntStream.of(optional.getAsInt()) : IntStream.empty();
+    }
+
+    /**
+     * Creates a {@link LongStream} from an {@link OptionalLong} without boxing. The stream contains the value if one is present, otherwise it is empty. See {@link #stream(Optional)}.
+     *
+     * @param optional
+     *         the optional to create a stream from
+     *
+     * @return the created stream
+     */
+    public static LongStream stream(final OptionalLong optional) {
+        notNull(optional);
+        return optional.isPresent() ? LongStream.of(optional.getAsLong()) : LongStream.empty();
+    }
+
+    /**
+     * Creates a {@link DoubleStream} from an {@link OptionalDouble} without boxing. The stream contains the value if one is present, otherwise it is empty. See {@link #stream(Optional)}.
+     *
+     * @param optional
+     *         the optional to create a stream from
+     *
+     * @return the created stream
+     */
+    public static DoubleStream stream(final OptionalDouble optional) {
+        notNull(optional);
+        return optional.isPresent() ? DoubleStream.of(optional.getAsDouble()) : DoubleStream.empty();
+    }
+
+    /**
+     * Converts a stream of optional values to a stream of the present values. This gives the same result as {@code optStream.flatMap(Optionals::stream)} but does not create a stream for every
+     * element, which makes it considerably cheaper:
+     * <pre>
+     * final Stream&lt;Optional&lt;T&gt;&gt; optStream = ...;
+     * final Stream&lt;T&gt; stream = Optionals.flatten(optStream);
+     * </pre>
+     * The returned stream is parallel if the given stream is and closing it closes the given stream.
+     *
+     * @param stream
+     *         the stream of optionals, not null and must not contain null elements
+     * @param <T>
+     *         the type of the values
+     *
+     * @return a stream of the present values
+     */
+    public static <T> Stream<T> flatten(final Stream<? extends Optional<? extends T>> stream) {
+        notNull(stream);
+        return StreamSupport.stream(new PresentSpliterator<T>(stream.spliterator()), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Gets the first present value of two lookup steps. The second step is only evaluated if the first one is empty. This is a flat alternative to nested {@link Optional#orElseGet(Supplier)}
+     * calls:
+     * <pre>
+     * final Optional&lt;User&gt; user = Optionals.firstPresent(() -&gt; localCache.get(id), () -&gt; nearCache.get(id));
+     * </pre>
+     *
+     * @param first
+     *         the first step, not null
+     * @param second
+     *         the second step, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all steps are empty
+     *
+     * @see #firstPresent(Supplier[])
+     */
+    // Method without varargs to increase performance
+    public static <T> Optional<T> firstPresent(final Supplier<Optional<T>> first, final Supplier<Optional<T>> second) {
+        notNull(first);
+        notNull(second);
+        final Optional<T> value = notNull(first.get(), "Lookup step returned null");
+        return value.isPresent() ? value : notNull(second.get(), "Lookup step returned null");
+    }
+
+    /**
+     * Gets the first present value of three lookup steps. See {@link #firstPresent(Supplier[])}.
+     *
+     * @param first
+     *         the first step, not null
+     * @param second
+     *         the second step, not null
+     * @param third
+     *         the third step, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all steps are empty
+     */
+    // Method without varargs to increase performance
+    public static <T> Optional<T> firstPresent(final Supplier<Optional<T>> first, final Supplier<Optional<T>> second, final Supplier<Optional<T>> third) {
+        notNull(third);
+        final Optional<T> value = firstPresent(first, second);
+        return value.isPresent() ? value : notNull(third.get(), "Lookup step returned null");
+    }
+
+    /**
+     * Gets the first present value of a number of lookup steps, e.g. a chain of caches followed by a loader. The steps are evaluated lazily in order and evaluation stops at the first step that
+     * returns a present value:
+     * <pre>
+     * final Optional&lt;User&gt; user = Optionals.firstPresent(() -&gt; localCache.get(id), () -&gt; nearCache.get(id), () -&gt; loader.load(id));
+     * </pre>
+     * There are overloads without varargs for two and three steps.
+     *
+     * @param steps
+     *         the steps, not null and must not contain null elements
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all steps are empty
+     */
+    @SafeVarargs
+    public static <T> Optional<T> firstPresent(final Supplier<Optional<T>>... steps) {
+        noNullElements(steps);
+        for (final Supplier<Optional<T>> step : steps) {
+            final Optional<T> value = notNull(step.get(), "Lookup step returned null");
+            if (value.isPresent()) {
+                return value;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the first present value of two lookup steps that may throw checked exceptions. See {@link #firstPresentChecked(ThrowableSupplier[])}.
+     *
+     * @param first
+     *         the first step, not null
+     * @param second
+     *         the second step, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all steps are empty
+     *
+     * @throws Exception
+     *         any exception thrown by an evaluated step
+     */
+    // Method without varargs to increase performance
+    public static <T> Optional<T> firstPresentChecked(final ThrowableSupplier<Optional<T>> first, final ThrowableSupplier<Optional<T>> second) throws Exception {
+        notNull(first);
+        notNull(second);
+        final Optional<T> value = notNull(first.get(), "Lookup step returned null");
+        return value.isPresent() ? value : notNull(second.get(), "Lookup step returned null");
+    }
+
+    /**
+     * Gets the first present value of three lookup steps that may throw checked exceptions. See {@link #firstPresentChecked(ThrowableSupplier[])}.
+     *
+     * @param first
+     *         the first step, not null
+     * @param second
+     *         the second step, not null
+     * @param third
+     *         the third step, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all steps are empty
+     *
+     * @throws Exception
+     *         any exception thrown by an evaluated step
+     */
+    // Method without varargs to increase performance
+    public static <T> Optional<T> firstPresentChecked(final ThrowableSupplier<Optional<T>> first, final ThrowableSupplier<Optional<T>> second, final ThrowableSupplier<Optional<T>> third)
+            throws Exception {
+        notNull(third);
+        final Optional<T> value = firstPresentChecked(first, second);
+        return value.isPresent() ? value : notNull(third.get(), "Lookup step returned null");
+    }
+
+    /**
+     * Same as {@link #firstPresent(Supplier[])} but for steps that may throw checked exceptions, e.g. a loader that reads from disk. An exception thrown by a step is propagated as is and no further
+     * steps are evaluated.
+     *
+     * @param steps
+     *         the steps, not null and must not contain null elements
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all steps are empty
+     *
+     * @throws Exception
+     *         any exception thrown by an evaluated step
+     */
+    @SafeVarargs
+    public static <T> Optional<T> firstPresentChecked(final ThrowableSupplier<Optional<T>>... steps) throws Exception {
+        noNullElements(steps);
+        for (final ThrowableSupplier<Optional<T>> step : steps) {
+            final Optional<T> value = notNull(step.get(), "Lookup step returned null");
+            if (value.isPresent()) {
+                return value;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Races a number of lookups that can answer the same question, e.g. replicas or indexes, using the default executor for blocking calls. See {@link #racePresent(Executor,
+     * ThrowableSupplier[])}. The default executor uses virtual threads when running on a JVM that supports them (Java 21+), otherwise a shared cached pool of daemon threads.
+     *
+     * @param lookups
+     *         the lookups to race, not null and must not contain null elements
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all lookups are empty
+     *
+     * @throws Exception
+     *         if no lookup returned a present value and at least one lookup failed, or if the calling thread is interrupted
+     */
+    @SafeVarargs
+    public static <T> Optional<T> racePresent(final ThrowableSupplier<Optional<T>>... lookups) throws Exception {
+        return racePresent(AsyncExecutors.blocking(), lookups);
+    }
+
+    /**
+     * Races a number of lookups that can answer the same question, e.g. replicas or indexes. All lookups are started concurrently in the given executor and the first present value wins, after which
+     * the remaining lookups are cancelled and interrupted:
+     * <pre>
+     * final Optional&lt;Document&gt; document = Optionals.racePresent(executor, () -&gt; primary.find(id), () -&gt; replica.find(id));
+     * </pre>
+     * <p>An empty optional is only returned once every lookup has returned empty. A lookup that fails, or returns null, counts as not having found a value. If no lookup finds a value and at least one has failed, the
+     * first failure is thrown with the other failures added as suppressed exceptions.</p>
+     *
+     * @param executor
+     *         the executor to run the lookups in, not null
+     * @param lookups
+     *         the lookups to race, not null and must not contain null elements
+     * @param <T>
+     *         the type of the value
+     *
+     * @return the first present optional, or an empty optional if all lookups are empty
+     *
+     * @throws Exception
+     *         if no lookup returned a present value and at least one lookup failed, or if the calling thread is interrupted
+     *
+     * @see #firstPresentChecked(ThrowableSupplier[])
+     */
+    @SafeVarargs
+    public static <T> Optional<T> racePresent(final Executor executor, final ThrowableSupplier<Optional<T>>... lookups) throws Exception {
+        notNull(executor);
+        noNullElements(lookups);
+        final BlockingQueue<Future<Optional<T>>> completed = new LinkedBlockingQueue<>();
+        final List<Future<Optional<T>>> started = new ArrayList<>(lookups.length);
+        try {
+            for (final ThrowableSupplier<Optional<T>> lookup : lookups) {
+                final FutureTask<Optional<T>> task = new FutureTask<Optional<T>>(() -> notNull(lookup.get(), "Lookup returned null")) {
+                    @Override
+                    protected void done() {
+                        completed.add(this);
+                    }
+                };
+                started.add(task);
+                executor.execute(task);
+            }
+            Exception failure = null;
+            for (int i = 0; i < lookups.length; ++i) {
+                try {
+                    final Optional<T> value = completed.take().get();
+                    if (value.isPresent()) {
+                        return value;
+                    }
+                } catch (ExecutionException e) {
+                    failure = addFailure(failure, e.getCause());
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return Optional.empty();
+        } finally {
+            for (final Future<Optional<T>> task : started) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static Exception addFailure(final Exception failure, final Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        final Exception exception = (Exception) cause;
+        if (failure == null) {
+            return exception;
+        }
+        failure.addSuppressed(exception);
+        return failure;
+    }
+
+    private static final class PresentSpliterator<T> implements Spliterator<T>, Consumer<Optional<? extends T>> {
+
+        private final Spliterator<? extends Optional<? extends T>> source;
+        private T value;
+
+        PresentSpliterator(final Spliterator<? extends Optional<? extends T>> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            while (source.tryAdvance(this)) {
+                if (value != null) {
+                    final T t = value;
+                    value = null;
+                    action.accept(t);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super T> action) {
+            source.forEachRemaining(optional -> {
+                if (optional.isPresent()) {
+                    action.accept(optional.get());
+                }
+            });
+        }
+
+        @Override
+        public void accept(final Optional<? extends T> optional) {
+            value = optional.orElse(null);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            final Spliterator<? extends Optional<? extends T>> prefix = source.trySplit();
+            return prefix == null ? null : new PresentSpliterator<>(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & (ORDERED | IMMUTABLE | CONCURRENT) | NONNULL;
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * A point in time snapshot of the state of a {@link ForkJoinPool}. Useful for monitoring pools that are used with {@link Streams#parallelIn(ForkJoinPool, java.util.stream.Stream,
+ * java.util.function.Function)}.
+ *
+ * <p>All values are estimates as defined by the corresponding {@link ForkJoinPool} methods.</p>
+ *
+ * <p>This class is immutable and thread safe</p>
+ */
+public final class PoolStatistics {
+
+    private final int parallelism;
+    private final int poolSize;
+    private final int activeThreadCount;
+    private final int runningThreadCount;
+    private final long queuedTaskCount;
+    private final int queuedSubmissionCount;
+    private final long stealCount;
+
+    private PoolStatistics(final ForkJoinPool pool) {
+        this.parallelism = pool.getParallelism();
+        this.poolSize = pool.getPoolSize();
+        this.activeThreadCount = pool.getActiveThreadCount();
+        this.runningThreadCount = pool.getRunningThreadCount();
+        this.queuedTaskCount = pool.getQueuedTaskCount();
+        this.queuedSubmissionCount = pool.getQueuedSubmissionCount();
+        this.stealCount = pool.getStealCount();
+    }
+
+    /**
+     * Takes a snapshot of the given pool.
+     *
+     * @param pool
+     *         the pool, not null
+     *
+     * @return the snapshot
+     */
+    public static PoolStatistics of(final ForkJoinPool pool) {
+        notNull(pool);
+        return new PoolStatistics(pool);
+    }
+
+    /**
+     * @return the targeted parallelism level of the pool
+     *
+     * @see ForkJoinPool#getParallelism()
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of worker threads that have started but not yet terminated
+     *
+     * @see ForkJoinPool#getPoolSize()
+     */
+    public int poolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the number of threads that are stealing or executing tasks
+     *
+     * @see ForkJoinPool#getActiveThreadCount()
+     */
+    public int activeThreadCount() {
+        return activeThreadCount;
+    }
+
+    /**
+     * @return the number of worker threads that are not blocked waiting to join tasks or for other managed synchronization
+     *
+     * @see ForkJoinPool#getRunningThreadCount()
+     */
+    public int runningThreadCount() {
+        return runningThreadCount;
+    }
+
+    /**
+     * @return the number of tasks currently held in the work queues of the worker threads
+     *
+     * @see ForkJoinPool#getQueuedTaskCount()
+     */
+    public long queuedTaskCount() {
+        return queuedTaskCount;
+    }
+
+    /**
+     * @return the number of tasks submitted to the pool that have not yet begun executing
+     *
+     * @see ForkJoinPool#getQueuedSubmissionCount()
+     */
+    public int queuedSubmissionCount() {
+        return queuedSubmissionCount;
+    }
+
+    /**
+     * @return the total number of tasks stolen from one thread's work queue by another
+     *
+     * @see ForkJoinPool#getStealCount()
+     */
+    public long stealCount() {
+        return stealCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStatistics{" +
+                "parallelism=" + parallelism +
+                ", poolSize=" + poolSize +
+                ", activeThreadCount=" + activeThreadCount +
+                ", runningThreadCount=" + runningThreadCount +
+                ", queuedTaskCount=" + queuedTaskCount +
+                ", queuedSubmissionCount=" + queuedSubmissionCount +
+                ", stealCount=" + stealCount +
+                '}';
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * A spliterator that groups the elements of a primitive source spliterator into arrays of a fixed size, so that no element is boxed. The last array may be smaller. Splitting is done in the same
+ * way as in {@link BatchSpliterator}: if the source is {@link #SIZED} and {@link #SUBSIZED} the source is split directly and the prefix is topped up with elements taken from the head of the
+ * remaining part, otherwise a number of batches are read into an array.
+ *
+ * <p>When {@code reuse} is true the same array instance is passed on for every full batch in {@link #forEachRemaining(Consumer)}. This must only be used when the downstream consumer does not
+ * retain the arrays.</p>
+ *
+ * @param <A>
+ *         the array type of the batches
+ * @see BatchSpliterator
+ */
+abstract class PrimitiveBatchSpliterator<A> implements Spliterator<A> {
+
+    private static final int SPLIT_UNIT = 1 << 10;
+    private static final int MAX_SPLIT = 1 << 25;
+
+    final int batchSize;
+    final boolean reuse;
+    private final Spliterator<?> source;
+    private int splitBatches;
+
+    PrimitiveBatchSpliterator(final Spliterator<?> source, final int batchSize, final boolean reuse) {
+        this.source = source;
+        this.batchSize = batchSize;
+        this.reuse = reuse;
+    }
+
+    /**
+     * @return the next {@code n} elements, taken from the source and then from the tail, or {@code null} if both are exhausted
+     */
+    abstract A nextBatch(int n);
+
+    /**
+     * @return the number of elements left in the tail
+     */
+    abstract long tailRemaining();
+
+    /**
+     * @return a spliterator over the given prefix of the source, followed by the given tail
+     */
+    abstract PrimitiveBatchSpliterator<A> prefix(Spliterator<?> prefix, A tail);
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super A> action) {
+        final A batch = nextBatch(batchSize);
+        if (batch == null) {
+            return false;
+        }
+        action.accept(batch);
+        return true;
+    }
+
+    @Override
+    public Spliterator<A> trySplit() {
+        if ((source.characteristics() & (SIZED | SUBSIZED)) == (SIZED | SUBSIZED)) {
+            return splitSized();
+        }
+        return splitToArray();
+    }
+
+    @Override
+    public long estimateSize() {
+        final long size = source.estimateSize();
+        if (size == Long.MAX_VALUE) {
+            return size;
+        }
+        final long total = size + tailRemaining();
+        return total / batchSize + (total % batchSize == 0 ? 0 : 1);
+    }
+
+    @Override
+    public int characteristics() {
+        final int sourceCharacteristics = source.characteristics();
+        int characteristics = (sourceCharacteristics & (ORDERED | SIZED)) | NONNULL;
+        if ((sourceCharacteristics & (SIZED | SUBSIZED)) == (SIZED | SUBSIZED)) {
+            characteristics |= SUBSIZED;
+        }
+        return characteristics;
+    }
+
+    private Spliterator<A> splitSized() {
+        if (source.estimateSize() <= batchSize) {
+            return null;
+        }
+        final Spliterator<?> prefix = source.trySplit();
+        if (prefix == null) {
+            return null;
+        }
+        final int remainder = (int) (prefix.estimateSize() % batchSize);
+        final A prefixTail = remainder == 0 ? null : nextBatch(batchSize - remainder);
+        return prefix(prefix, prefixTail);
+    }
+
+    private Spliterator<A> splitToArray() {
+        final long size = estimateSize();
+        if (size <= 1) {
+            return null;
+        }
+        final int unit = Math.max(1, SPLIT_UNIT / batchSize);
+        final int maxBatches = Math.max(1, MAX_SPLIT / batchSize);
+        final int n = (int) Math.min(size, Math.min(maxBatches, splitBatches + unit));
+        final Object[] batches = new Object[n];
+        int count = 0;
+        A batch;
+        while (count < n && (batch = nextBatch(batchSize)) != null) {
+            batches[count++] = batch;
+        }
+        if (count == 0) {
+            return null;
+        }
+        splitBatches = count;
+        @SuppressWarnings("unchecked")
+        final Spliterator<A> prefix = (Spliterator<A>) Spliterators.spliterator(batches, 0, count, characteristics() & (ORDERED | NONNULL));
+        return prefix;
+    }
+
+    int initialCapacity(final int n) {
+        final long size = source.estimateSize();
+        return (int) Math.max(1, Math.min(n, size == Long.MAX_VALUE ? SPLIT_UNIT : size + tailRemaining()));
+    }
+
+    static int grow(final int length, final int batchSize) {
+        return (int) Math.min(batchSize, (long) length << 1);
+    }
+
+    static final class OfInt extends PrimitiveBatchSpliterator<int[]> implements IntConsumer {
+        private final Spliterator.OfInt source;
+        private int[] tail;
+        private int tailIndex;
+        private int[] batch;
+        private int length;
+        private Consumer<? super int[]> downstream;
+
+        OfInt(final Spliterator.OfInt source, final int batchSize, final boolean reuse) {
+            this(source, batchSize, reuse, null);
+        }
+
+        private OfInt(final Spliterator.OfInt source, final int batchSize, final boolean reuse, final int[] tail) {
+            super(source, batchSize, reuse);
+            this.source = source;
+            this.tail = tail;
+        }
+
+        @Override
+        PrimitiveBatchSpliterator<int[]> prefix(final Spliterator<?> prefix, final int[] tail) {
+            return new OfInt((Spliterator.OfInt) prefix, batchSize, false, tail);
+        }
+
+        @Override
+        int[] nextBatch(final int n) {
+            batch = new int[initialCapacity(n)];
+            length = 0;
+            while (length < n && source.tryAdvance((IntConsumer) this)) {
+                // accept() adds to the current batch
+            }
+            if (length < n && tail != null) {
+                final int k = Math.min(n - length, tail.length - tailIndex);
+                if (batch.length < length + k) {
+                    batch = Arrays.copyOf(batch, length + k);
+                }
+                System.arraycopy(tail, tailIndex, batch, length, k);
+                length += k;
+                skipTail(k);
+            }
+            final int[] result = length == 0 ? null : length == batch.length ? batch : Arrays.copyOf(batch, length);
+            batch = null;
+            return result;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super int[]> action) {
+            downstream = action;
+            batch = new int[reuse ? batchSize : initialCapacity(batchSize)];
+            length = 0;
+            source.forEachRemaining((IntConsumer) this);
+            while (tail != null) {
+                accept(tail[tailIndex]);
+                skipTail(1);
+            }
+            final int[] last = length == batch.length ? batch : Arrays.copyOf(batch, length);
+            downstream = null;
+            batch = null;
+            if (last.length > 0) {
+                action.accept(last);
+            }
+        }
+
+        @Override
+        public void accept(final int value) {
+            if (length == batch.length) {
+                batch = Arrays.copyOf(batch, grow(length, batchSize));
+            }
+            batch[length++] = value;
+            if (downstream != null && length == batchSize) {
+                downstream.accept(batch);
+                length = 0;
+                if (!reuse) {
+                    batch = new int[initialCapacity(batchSize)];
+                }
+            }
+        }
+
+        @Override
+        long tailRemaining() {
+            return tail == null ? 0 : tail.length - tailIndex;
+        }
+
+        private void skipTail(final int n) {
+            tailIndex += n;
+            if (tailIndex == tail.length) {
+                tail = null;
+                tailIndex = 0;
+            }
+        }
+    }
+
+    static final class OfLong extends PrimitiveBatchSpliterator<long[]> implements LongConsumer {
+        private final Spliterator.OfLong source;
+        private long[] tail;
+        private int tailIndex;
+        private long[] batch;
+        private int length;
+        private Consumer<? super long[]> downstream;
+
+        OfLong(final Spliterator.OfLong source, final int batchSize, final boolean reuse) {
+            this(source, batchSize, reuse, null);
+        }
+
+        private OfLong(final Spliterator.OfLong source, final int batchSize, final boolean reuse, final long[] tail) {
+            super(source, batchSize, reuse);
+            this.source = source;
+            this.tail = tail;
+        }
+
+        @Override
+        PrimitiveBatchSpliterator<long[]> prefix(final Spliterator<?> prefix, final long[] tail) {
+            return new OfLong((Spliterator.OfLong) prefix, batchSize, false, tail);
+        }
+
+        @Override
+        long[] nextBatch(final int n) {
+            batch = new long[initialCapacity(n)];
+            length = 0;
+            while (length < n && source.tryAdvance((LongConsumer) this)) {
+                // accept() adds to the current batch
+            }
+            if (length < n && tail != null) {
+                final int k = Math.min(n - length, tail.length - tailIndex);
+                if (batch.length < length + k) {
+                    batch = Arrays.copyOf(batch, length + k);
+                }
+                System.arraycopy(tail, tailIndex, batch, length, k);
+                length += k;
+                skipTail(k);
+            }
+            final long[] result = length == 0 ? null : length == batch.length ? batch : Arrays.copyOf(batch, length);
+            batch = null;
+            return result;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super long[]> action) {
+            downstream = action;
+            batch = new long[reuse ? batchSize : initialCapacity(batchSize)];
+            length = 0;
+            source.forEachRemaining((LongConsumer) this);
+            while (tail != null) {
+                accept(tail[tailIndex]);
+                skipTail(1);
+            }
+            final long[] last = length == batch.length ? batch : Arrays.copyOf(batch, length);
+            downstream = null;
+            batch = null;
+            if (last.length > 0) {
+                action.accept(last);
+            }
+        }
+
+        @Override
+        public void accept(final long value) {
+            if (length == batch.length) {
+                batch = Arrays.copyOf(batch, grow(length, batchSize));
+            }
+            batch[length++] = value;
+            if (downstream != null && length == batchSize) {
+                downstream.accept(batch);
+                length = 0;
+                if (!reuse) {
+                    batch = new long[initialCapacity(batchSize)];
+                }
+            }
+        }
+
+        @Override
+        long tailRemaining() {
+            return tail == null ? 0 : tail.length - tailIndex;
+        }
+
+        private void skipTail(final int n) {
+            tailIndex += n;
+            if (tailIndex == tail.length) {
+                tail = null;
+                tailIndex = 0;
+            }
+        }
+    }
+
+    static final class OfDouble extends PrimitiveBatchSpliterator<double[]> implements DoubleConsumer {
+        private final Spliterator.OfDouble source;
+        private double[] tail;
+        private int tailIndex;
+        private double[] batch;
+        private int length;
+        private Consumer<? super double[]> downstream;
+
+        OfDouble(final Spliterator.OfDouble source, final int batchSize, final boolean reuse) {
+            this(source, batchSize, reuse, null);
+        }
+
+        private OfDouble(final Spliterator.OfDouble source, final int batchSize, final boolean reuse, final double[] tail) {
+            super(source, batchSize, reuse);
+            this.source = source;
+            this.tail = tail;
+        }
+
+        @Override
+        PrimitiveBatchSpliterator<double[]> prefix(final Spliterator<?> prefix, final double[] tail) {
+            return new OfDouble((Spliterator.OfDouble) prefix, batchSize, false, tail);
+        }
+
+        @Override
+        double[] nextBatch(final int n) {
+            batch = new double[initialCapacity(n)];
+            length = 0;
+            while (length < n && source.tryAdvance((DoubleConsumer) this)) {
+                // accept() adds to the current batch
+            }
+            if (length < n && tail != null) {
+                final int k = Math.min(n - length, tail.length - tailIndex);
+                if (batch.length < length + k) {
+                    batch = Arrays.copyOf(batch, length + k);
+                }
+                System.arraycopy(tail, tailIndex, batch, length, k);
+                length += k;
+                skipTail(k);
+            }
+            final double[] result = length == 0 ? null : length == batch.length ? batch : Arrays.copyOf(batch, length);
+            batch = null;
+            return result;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super double[]> action) {
+            downstream = action;
+            batch = new double[reuse ? batchSize : initialCapacity(batchSize)];
+            length = 0;
+            source.forEachRemaining((DoubleConsumer) this);
+            while (tail != null) {
+                accept(tail[tailIndex]);
+                skipTail(1);
+            }
+            final double[] last = length == batch.length ? batch : Arrays.copyOf(batch, length);
+            downstream = null;
+            batch = null;
+            if (last.length > 0) {
+                action.accept(last);
+            }
+        }
+
+        @Override
+        public void accept(final double value) {
+            if (length == batch.length) {
+                batch = Arrays.copyOf(batch, grow(length, batchSize));
+            }
+            batch[length++] = value;
+            if (downstream != null && length == batchSize) {
+                downstream.accept(batch);
+                length = 0;
+                if (!reuse) {
+                    batch = new double[initialCapacity(batchSize)];
+                }
+            }
+        }
+
+        @Override
+        long tailRemaining() {
+            return tail == null ? 0 : tail.length - tailIndex;
+        }
+
+        private void skipTail(final int n) {
+            tailIndex += n;
+            if (tailIndex == tail.length) {
+                tail = null;
+                tailIndex = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Retries failed calls according to a {@link RetryPolicy}:
+ * <pre>
+ * final Retry retry = Retry.of(RetryPolicy.maxAttempts(5).withRetryOn(e -&gt; e instanceof IOException));
+ * final Response response = retry.call(() -&gt; client.send(request));
+ * </pre>
+ * <p>{@link #call(ThrowableSupplier)} waits between attempts by parking the calling thread, which is cheap on a virtual thread but ties up a platform thread. {@link #callAsync(ThrowableSupplier,
+ * ScheduledExecutorService)} instead schedules the attempts and does not block any thread while waiting.</p>
+ *
+ * <p>When the policy gives up, the exception of the last attempt is thrown with the exceptions of the earlier attempts added as suppressed exceptions.</p>
+ *
+ * <p>This class is immutable and thread safe</p>
+ */
+public final class Retry {
+
+    private final RetryPolicy policy;
+
+    private Retry(final RetryPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @param policy
+     *         the policy, not null
+     *
+     * @return a retry using the given policy
+     */
+    public static Retry of(final RetryPolicy policy) {
+        notNull(policy);
+        return new Retry(policy);
+    }
+
+    /**
+     * @return the policy of this retry
+     */
+    public RetryPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Calls a supplier, retrying according to the policy. The calling thread waits between attempts.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the first successful attempt
+     *
+     * @throws Exception
+     *         the exception of the last attempt, if no attempt succeeded, or an {@link InterruptedException} if the thread is interrupted while waiting
+     */
+    public <T> T call(final ThrowableSupplier<? extends T> supplier) throws Exception {
+        notNull(supplier);
+        final long start = System.nanoTime();
+        final List<Exception> failures = new ArrayList<>(1);
+        long delay = 0;
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                return supplier.get();
+            } catch (Exception e) {
+                failures.add(e);
+                delay = nextDelay(e, attempt, start, delay);
+            }
+            if (delay < 0) {
+                throw giveUp(failures);
+            }
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    /**
+     * Calls a function, retrying according to the policy. See {@link #call(ThrowableSupplier)}.
+     *
+     * @param function
+     *         the function to call, not null
+     * @param t
+     *         the argument of the function
+     * @param <T>
+     *         the type of the argument
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the result of the first successful attempt
+     *
+     * @throws Exception
+     *         the exception of the last attempt, if no attempt succeeded, or an {@link InterruptedException} if the thread is interrupted while waiting
+     */
+    public <T, R> R apply(final ThrowableFunction<? super T, ? extends R> function, final T t) throws Exception {
+        notNull(function);
+        return call(() -> function.apply(t));
+    }
+
+    /**
+     * Decorates a function so that every call to it is retried according to the policy.
+     *
+     * @param function
+     *         the function to decorate, not null
+     * @param <T>
+     *         the type of the argument
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the decorated function
+     */
+    public <T, R> ThrowableFunction<T, R> decorate(final ThrowableFunction<? super T, ? extends R> function) {
+        notNull(function);
+        return t -> call(() -> function.apply(t));
+    }
+
+    /**
+     * Calls a supplier asynchronously, retrying according to the policy, running the attempts in the default executor for blocking calls. See {@link #callAsync(ThrowableSupplier,
+     * ScheduledExecutorService, Executor)}.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param scheduler
+     *         the scheduler used to wait between attempts, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return a future that completes with the result of the first successful attempt, or exceptionally with the exception of the last attempt
+     */
+    public <T> CompletableFuture<T> callAsync(final ThrowableSupplier<? extends T> supplier, final ScheduledExecutorService scheduler) {
+        return callAsync(supplier, scheduler, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Calls a supplier asynchronously, retrying according to the policy. Attempts run in the given executor and the waits between them are scheduled in the scheduler, so no thread is blocked while
+     * waiting. Cancelling the returned future stops further attempts.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param scheduler
+     *         the scheduler used to wait between attempts, not null
+     * @param executor
+     *         the executor to run the attempts in, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return a future that completes with the result of the first successful attempt, or exceptionally with the exception of the last attempt
+     */
+    public <T> CompletableFuture<T> callAsync(final ThrowableSupplier<? extends T> supplier, final ScheduledExecutorService scheduler, final Executor executor) {
+        notNull(supplier);
+        notNull(scheduler);
+        notNull(executor);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        new AsyncCall<T>(supplier, scheduler, executor, result).attempt();
+        return result;
+    }
+
+    /**
+     * @return the delay before the next attempt, or -1 if the policy gives up
+     */
+    private long nextDelay(final Exception failure, final int attempt, final long start, final long previousDelay) {
+        if (attempt >= policy.maxAttempts() || !policy.shouldRetry(failure)) {
+            return -1;
+        }
+        final long delay = policy.nextDelayNanos(previousDelay);
+        final long budget = policy.timeBudgetNanos();
+        if (budget != Long.MAX_VALUE && System.nanoTime() + delay - start - budget > 0) {
+            return -1;
+        }
+        return delay;
+    }
+
+    private static Exception giveUp(final List<Exception> failures) {
+        final Exception last = failures.get(failures.size() - 1);
+        for (int i = 0; i < failures.size() - 1; ++i) {
+            if (failures.get(i) != last) {
+                last.addSuppressed(failures.get(i));
+            }
+        }
+        return last;
+    }
+
+    private final class AsyncCall<T> implements Runnable {
+        private final ThrowableSupplier<? extends T> supplier;
+        private final ScheduledExecutorService scheduler;
+        private final Executor executor;
+        private final CompletableFuture<T> result;
+        private final long start = System.nanoTime();
+        private final List<Exception> failures = new ArrayList<>(1);
+        private long delay;
+        private int attempt;
+
+        AsyncCall(final ThrowableSupplier<? extends T> supplier, final ScheduledExecutorService scheduler, final Executor executor, final CompletableFuture<T> result) {
+            this.supplier = supplier;
+            this.scheduler = scheduler;
+            this.executor = executor;
+            this.result = result;
+        }
+
+        void attempt() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            ++attempt;
+            try {
+                result.complete(supplier.get());
+                return;
+            } catch (Exception e) {
+                failures.add(e);
+                delay = nextDelay(e, attempt, start, delay);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            }
+            if (delay < 0) {
+                result.completeExceptionally(giveUp(failures));
+                return;
+            }
+            try {
+                scheduler.schedule(this::attempt, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                failures.add(e);
+                result.completeExceptionally(giveUp(failures));
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import se.sawano.java.commons.lang.validate.exception.ValidationException;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Defines when and how a failed call is retried by {@link Retry}. A policy is created with {@link #maxAttempts(int)} and refined with the {@code with} methods, each of which returns a new policy:
+ * <pre>
+ * final RetryPolicy policy = RetryPolicy.maxAttempts(5)
+ *                                       .withBackoff(Duration.ofMillis(50), Duration.ofSeconds(5))
+ *                                       .withTimeBudget(Duration.ofSeconds(20))
+ *                                       .withRetryOn(e -&gt; e instanceof IOException);
+ * </pre>
+ * <p>The delay between attempts uses exponential backoff with decorrelated jitter: each delay is a random value between the base delay and three times the previous delay, capped at the max delay.
+ * This spreads out retries from many clients that failed at the same time, avoiding thundering herds, while still backing off exponentially.</p>
+ *
+ * <p>By default a policy backs off from 100 ms up to 10 s, has no time budget and retries all exceptions except {@link ValidationException}s and {@link InterruptedException}s, which are never
+ * retried.</p>
+ *
+ * <p>This class is immutable and thread safe</p>
+ */
+public final class RetryPolicy {
+
+    private static final Predicate<Exception> ALL = e -> true;
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final long timeBudgetNanos;
+    private final Predicate<? super Exception> retryOn;
+
+    private RetryPolicy(final int maxAttempts, final long baseDelayNanos, final long maxDelayNanos, final long timeBudgetNanos, final Predicate<? super Exception> retryOn) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelayNanos;
+        this.maxDelayNanos = maxDelayNanos;
+        this.timeBudgetNanos = timeBudgetNanos;
+        this.retryOn = retryOn;
+    }
+
+    /**
+     * Creates a policy with the default settings that makes at most the given number of attempts, including the first one.
+     *
+     * @param maxAttempts
+     *         the maximum number of attempts, must be positive
+     *
+     * @return the policy
+     */
+    public static RetryPolicy maxAttempts(final int maxAttempts) {
+        isTrue(maxAttempts > 0, "Max attempts must be positive: %d", maxAttempts);
+        return new RetryPolicy(maxAttempts, Duration.ofMillis(100).toNanos(), Duration.ofSeconds(10).toNanos(), Long.MAX_VALUE, ALL);
+    }
+
+    /**
+     * @param baseDelay
+     *         the smallest delay between two attempts, not negative
+     * @param maxDelay
+     *         the largest delay between two attempts, not less than the base delay
+     *
+     * @return a copy of this policy with the given backoff
+     */
+    public RetryPolicy withBackoff(final Duration baseDelay, final Duration maxDelay) {
+        notNull(baseDelay);
+        notNull(maxDelay);
+        isTrue(!baseDelay.isNegative(), "Base delay must not be negative: %s", baseDelay);
+        isTrue(maxDelay.compareTo(baseDelay) >= 0, "Max delay must not be less than the base delay: %s", maxDelay);
+        return new RetryPolicy(maxAttempts, nanos(baseDelay), nanos(maxDelay), timeBudgetNanos, retryOn);
+    }
+
+    /**
+     * Limits the total time spent on a call. No new attempt is scheduled if it would start after the budget, measured from the start of the first attempt, has run out. Attempts that are running
+     * when the budget runs out are not interrupted.
+     *
+     * @param timeBudget
+     *         the time budget, must be positive
+     *
+     * @return a copy of this policy with the given time budget
+     */
+    public RetryPolicy withTimeBudget(final Duration timeBudget) {
+        notNull(timeBudget);
+        isTrue(!timeBudget.isNegative() && !timeBudget.isZero(), "Time budget must be positive: %s", timeBudget);
+        return new RetryPolicy(maxAttempts, baseDelayNanos, maxDelayNanos, nanos(timeBudget), retryOn);
+    }
+
+    /**
+     * Sets which exceptions are retried. The predicate can only narrow the defaults: {@link ValidationException}s and {@link InterruptedException}s are never retried, even if the predicate
+     * accepts them.
+     *
+     * @param retryOn
+     *         the predicate that returns true for exceptions that should be retried, not null
+     *
+     * @return a copy of this policy with the given predicate
+     */
+    public RetryPolicy withRetryOn(final Predicate<? super Exception> retryOn) {
+        notNull(retryOn);
+        return new RetryPolicy(maxAttempts, baseDelayNanos, maxDelayNanos, timeBudgetNanos, retryOn);
+    }
+
+    /**
+     * @return the maximum number of attempts, including the first one
+     */
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the smallest delay between two attempts
+     */
+    public Duration baseDelay() {
+        return Duration.ofNanos(baseDelayNanos);
+    }
+
+    /**
+     * @return the largest delay between two attempts
+     */
+    public Duration maxDelay() {
+        return Duration.ofNanos(maxDelayNanos);
+    }
+
+    boolean shouldRetry(final Exception e) {
+        return !(e instanceof InterruptedException) && !(e instanceof ValidationException) && retryOn.test(e);
+    }
+
+    long timeBudgetNanos() {
+        return timeBudgetNanos;
+    }
+
+    /**
+     * @return the delay before the next attempt, given the previous delay or 0 before the first retry
+     */
+    long nextDelayNanos(final long previousDelayNanos) {
+        final long previous = Math.max(previousDelayNanos, baseDelayNanos);
+        final long upper = previous > maxDelayNanos / 3 ? maxDelayNanos : Math.min(maxDelayNanos, previous * 3);
+        if (upper <= baseDelayNanos) {
+            return baseDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(baseDelayNanos, upper);
+    }
+
+    private static long nanos(final Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", baseDelay=" + baseDelay() +
+                ", maxDelay=" + maxDelay() +
+                ", timeBudget=" + (timeBudgetNanos == Long.MAX_VALUE ? "none" : Duration.ofNanos(timeBudgetNanos)) +
+                '}';
+    }
+}
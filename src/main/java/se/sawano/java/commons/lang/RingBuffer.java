@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A growable FIFO ring buffer that hands out read-only views of its head without copying. Elements may optionally carry a {@code long} timestamp. The buffer only grows when it is full, so once the
+ * largest window has been seen no more allocation takes place.
+ *
+ * <p>There is a single view instance per buffer and it is only valid until the buffer is modified.</p>
+ *
+ * <p>This class is not thread safe</p>
+ *
+ * @param <T>
+ *         the type of the elements in the buffer
+ */
+final class RingBuffer<T> {
+
+    private final View view = new View();
+    private Object[] elements;
+    private long[] timestamps;
+    private int mask;
+    private int head;
+    private int size;
+
+    RingBuffer(final int minCapacity, final boolean timed) {
+        final int capacity = capacityFor(minCapacity);
+        elements = new Object[capacity];
+        timestamps = timed ? new long[capacity] : null;
+        mask = capacity - 1;
+    }
+
+    void add(final T element) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size++) & mask] = element;
+    }
+
+    void add(final T element, final long timestamp) {
+        if (size == elements.length) {
+            grow();
+        }
+        final int index = (head + size++) & mask;
+        elements[index] = element;
+        timestamps[index] = timestamp;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(final int i) {
+        return (T) elements[(head + i) & mask];
+    }
+
+    long timestamp(final int i) {
+        return timestamps[(head + i) & mask];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void removeFirst(final int n) {
+        for (int i = 0; i < n; ++i) {
+            elements[(head + i) & mask] = null;
+        }
+        head = (head + n) & mask;
+        size -= n;
+    }
+
+    /**
+     * @return a read-only view of the first {@code n} elements, valid until the buffer is modified
+     */
+    List<T> head(final int n) {
+        view.length = n;
+        return view;
+    }
+
+    private void grow() {
+        final int capacity = elements.length << 1;
+        final Object[] newElements = new Object[capacity];
+        final long[] newTimestamps = timestamps == null ? null : new long[capacity];
+        for (int i = 0; i < size; ++i) {
+            final int index = (head + i) & mask;
+            newElements[i] = elements[index];
+            if (newTimestamps != null) {
+                newTimestamps[i] = timestamps[index];
+            }
+        }
+        elements = newElements;
+        timestamps = newTimestamps;
+        mask = capacity - 1;
+        head = 0;
+    }
+
+    private static int capacityFor(final int minCapacity) {
+        final int capacity = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+        return capacity < 0 ? 1 << 30 : capacity;
+    }
+
+    private final class View extends AbstractList<T> implements RandomAccess {
+        int length;
+
+        @Override
+        public T get(final int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            }
+            return RingBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import static se.sawano.java.commons.lang.Hashing.mix;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A set of {@code long} values in open-addressing tables with linear probing. The tables are kept in {@code long[]}s until the set holds more than {@code maxOnHeap} values, after which they are
+ * moved to memory-mapped temporary files so that they no longer take up heap space. The files are deleted as soon as they have been mapped (or on exit if the platform does not allow that) and the
+ * memory is released when the set is garbage collected.
+ *
+ * <p>The set is split into segments with one lock each, so that concurrent adds rarely contend. The segment is picked from the high bits of the mixed value and the slot within the segment from
+ * the low bits, so the two are independent.</p>
+ *
+ * <p>This class is thread safe</p>
+ */
+final class SpillableLongSet {
+
+    private static final int MAX_ON_HEAP_CAPACITY = 1 << 30;
+    private static final int SEGMENT_BITS = Integer.numberOfTrailingZeros(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+
+    private final long maxOnHeap;
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final LongAdder size = new LongAdder();
+    private volatile boolean spilled;
+
+    SpillableLongSet(final long maxOnHeap) {
+        this.maxOnHeap = Math.min(maxOnHeap, MAX_ON_HEAP_CAPACITY >> 1);
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return true if the value was not already in the set
+     */
+    boolean add(final long value) {
+        return segments[(int) (mix(value) >>> (Long.SIZE - SEGMENT_BITS))].add(value);
+    }
+
+    long size() {
+        return size.sum();
+    }
+
+    boolean isOffHeap() {
+        return spilled;
+    }
+
+    private final class Segment {
+        private Table table = new HeapTable(16);
+        private long size;
+        private boolean containsZero;
+
+        synchronized boolean add(final long value) {
+            if (value == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                SpillableLongSet.this.size.increment();
+                return true;
+            }
+            if (!insert(table, value)) {
+                return false;
+            }
+            SpillableLongSet.this.size.increment();
+            if (++size > table.capacity >> 1) {
+                rehash(table.capacity << 1);
+            }
+            else if (spilled && table instanceof HeapTable) {
+                rehash(table.capacity);
+            }
+            return true;
+        }
+
+        private void rehash(final long capacity) {
+            if (!spilled && SpillableLongSet.this.size.sum() > maxOnHeap) {
+                spilled = true;
+            }
+            final Table rehashed = spilled || capacity > MAX_ON_HEAP_CAPACITY ? new MappedTable(capacity) : new HeapTable((int) capacity);
+            for (long i = 0; i < table.capacity; ++i) {
+                final long value = table.get(i);
+                if (value != 0) {
+                    insert(rehashed, value);
+                }
+            }
+            table = rehashed;
+        }
+    }
+
+    private static boolean insert(final Table table, final long value) {
+        final long mask = table.capacity - 1;
+        long i = mix(value) & mask;
+        while (true) {
+            final long existing = table.get(i);
+            if (existing == 0) {
+                table.set(i, value);
+                return true;
+            }
+            if (existing == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private abstract static class Table {
+        final long capacity;
+
+        Table(final long capacity) {
+            this.capacity = capacity;
+        }
+
+        abstract long get(long index);
+
+        abstract void set(long index, long value);
+    }
+
+    private static final class HeapTable extends Table {
+        private final long[] values;
+
+        HeapTable(final int capacity) {
+            super(capacity);
+            this.values = new long[capacity];
+        }
+
+        @Override
+        long get(final long index) {
+            return values[(int) index];
+        }
+
+        @Override
+        void set(final long index, final long value) {
+            values[(int) index] = value;
+        }
+    }
+
+    private static final class MappedTable extends Table {
+        // 2^27 longs, i.e. 1 GiB, per mapping since a single mapping is limited to 2 GiB
+        private static final int SEGMENT_SHIFT = 27;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        private final LongBuffer[] segments;
+
+        MappedTable(final long capacity) {
+            super(capacity);
+            final int count = (int) ((capacity + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            this.segments = new LongBuffer[count];
+            try {
+                final Path file = Files.createTempFile("java-commons-", ".set");
+                try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+                    for (int i = 0; i < count; ++i) {
+                        final long first = (long) i << SEGMENT_SHIFT;
+                        final long length = Math.min(SEGMENT_MASK + 1, capacity - first);
+                        segments[i] = channel.map(READ_WRITE, first * Long.BYTES, length * Long.BYTES).asLongBuffer();
+                    }
+                } finally {
+                    delete(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create memory-mapped table", e);
+            }
+        }
+
+        @Override
+        long get(final long index) {
+            return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+        }
+
+        @Override
+        void set(final long index, final long value) {
+            segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+        }
+
+        private static void delete(final Path file) {
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
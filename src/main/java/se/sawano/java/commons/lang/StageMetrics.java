@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static se.sawano.java.commons.lang.validate.Validate.inclusiveBetween;
+import static se.sawano.java.commons.lang.validate.Validate.notBlank;
+
+/**
+ * Live metrics of a named stream stage that is instrumented with {@link Streams#instrument(java.util.stream.Stream, String)}. All instrumented stages with the same name share the same metrics,
+ * which are kept in a global registry until {@link #clear()} is called.
+ *
+ * <p>Every element is counted and the thread that processed it is recorded. The latency of an element is the time it took the upstream part of the pipeline to produce it, and is only measured for a
+ * sample of the elements. Latencies are kept in a histogram with power of two buckets, so percentiles are upper bounds that are at most a factor of two off.</p>
+ *
+ * <p>This class is thread safe</p>
+ */
+public final class StageMetrics {
+
+    private static final int BUCKETS = 64;
+    private static final ConcurrentMap<String, StageMetrics> STAGES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sampleCount = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final ConcurrentMap<String, LongAdder> threads = new ConcurrentHashMap<>();
+
+    private StageMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the metrics of a stage, creating them if they do not exist.
+     *
+     * @param stageName
+     *         the name of the stage, not blank
+     *
+     * @return the metrics of the stage
+     */
+    public static StageMetrics of(final String stageName) {
+        notBlank(stageName);
+        return STAGES.computeIfAbsent(stageName, StageMetrics::new);
+    }
+
+    /**
+     * @return the metrics of all stages, sorted by stage name
+     */
+    public static Map<String, StageMetrics> stages() {
+        return Collections.unmodifiableMap(new TreeMap<>(STAGES));
+    }
+
+    /**
+     * Removes the metrics of all stages from the registry. Streams that are already instrumented keep updating the metrics they were created with.
+     */
+    public static void clear() {
+        STAGES.clear();
+    }
+
+    /**
+     * @return the name of the stage
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the number of elements that have passed the stage
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the number of elements whose latency has been measured
+     */
+    public long sampleCount() {
+        return sampleCount.sum();
+    }
+
+    /**
+     * @return the mean latency of the sampled elements in nanoseconds, or 0 if no element has been sampled
+     */
+    public double meanNanos() {
+        final long samples = sampleCount.sum();
+        return samples == 0 ? 0 : (double) sampledNanos.sum() / samples;
+    }
+
+    /**
+     * @return the highest latency of the sampled elements in nanoseconds
+     */
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Gets an upper bound of a latency percentile of the sampled elements.
+     *
+     * @param percentile
+     *         the percentile, between 0 and 100 inclusive
+     *
+     * @return the upper bound of the percentile in nanoseconds, or 0 if no element has been sampled
+     */
+    public long percentileNanos(final double percentile) {
+        inclusiveBetween(0.0, 100.0, percentile);
+        long total = 0;
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the number of elements processed by each thread, keyed by thread name
+     */
+    public Map<String, Long> threadDistribution() {
+        final Map<String, Long> distribution = new TreeMap<>();
+        threads.forEach((thread, adder) -> distribution.put(thread, adder.sum()));
+        return distribution;
+    }
+
+    /**
+     * Resets all metrics of the stage.
+     */
+    public void reset() {
+        count.reset();
+        sampleCount.reset();
+        sampledNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < BUCKETS; ++i) {
+            histogram.set(i, 0);
+        }
+        threads.clear();
+    }
+
+    void add(final long elements) {
+        count.add(elements);
+    }
+
+    void addThread(final long elements) {
+        threads.computeIfAbsent(Thread.currentThread().getName(), t -> new LongAdder()).add(elements);
+    }
+
+    void sample(final long nanos) {
+        final long latency = Math.max(0, nanos);
+        sampleCount.increment();
+        sampledNanos.add(latency);
+        maxNanos.accumulate(latency);
+        histogram.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(latency));
+    }
+
+    private static long upperBound(final int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "StageMetrics{" +
+                "name='" + name + '\'' +
+                ", count=" + count() +
+                ", sampleCount=" + sampleCount() +
+                ", meanNanos=" + meanNanos() +
+                ", p50Nanos=" + percentileNanos(50) +
+                ", p99Nanos=" + percentileNanos(99) +
+                ", maxNanos=" + maxNanos() +
+                ", threads=" + threadDistribution() +
+                '}';
+    }
+}
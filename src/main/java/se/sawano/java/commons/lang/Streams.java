@@ -16,12 +16,71 @@
 
 package se.sawano.java.commons.lang;
 
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collector.Characteristics.CONCURRENT;
+import static java.util.stream.Collector.Characteristics.UNORDERED;
+import static se.sawano.java.commons.lang.Throwables.sneakyThrow;
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.noNullElements;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
 import static se.sawano.java.commons.lang.validate.Validate.validState;
 
 public class Streams {
 
+    private static final int DEFAULT_SAMPLE_INTERVAL = 1 << 10;
+    // A MappedByteBuffer is limited to 2 GiB - 1 bytes since it is indexed by int. Files are mapped in 1 GiB segments to stay well below that,
+    // so int positions within a segment, e.g. fence + 1, never come close to overflowing. This is also the longest line lines() accepts.
+    private static final long MAX_MAPPED_SEGMENT = 1L << 30;
+
     private Streams() {}
 
     /**
@@ -92,4 +151,2173 @@ public class Streams {
             return null;
         };
     }
+
+    /**
+     * An {@link IntBinaryOperator} that can be used in reduce operations on an {@link IntStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne()}.
+     * <pre>
+     * final OptionalInt foundId = ids.filter(id -&gt; id == uniqueId).reduce(toOnlyOneInt());
+     * </pre>
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static IntBinaryOperator toOnlyOneInt() {
+        return toOnlyOneInt("Duplicates not allowed");
+    }
+
+    /**
+     * An {@link IntBinaryOperator} that can be used in reduce operations on an {@link IntStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne(String)}.
+     *
+     * @param message
+     *         the exception message to use
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static IntBinaryOperator toOnlyOneInt(final String message) {
+        return (t, t2) -> {
+            validState(false, message);
+            return 0;
+        };
+    }
+
+    /**
+     * An {@link IntBinaryOperator} that can be used in reduce operations on an {@link IntStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne(String, Object...)}.
+     *
+     * @param message
+     *         the exception message to use
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static IntBinaryOperator toOnlyOneInt(final String message, final Object... values) {
+        return (t, t2) -> {
+            validState(false, message, values);
+            return 0;
+        };
+    }
+
+    /**
+     * A {@link LongBinaryOperator} that can be used in reduce operations on a {@link LongStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne()}.
+     * <pre>
+     * final OptionalLong foundId = ids.filter(id -&gt; id == uniqueId).reduce(toOnlyOneLong());
+     * </pre>
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static LongBinaryOperator toOnlyOneLong() {
+        return toOnlyOneLong("Duplicates not allowed");
+    }
+
+    /**
+     * A {@link LongBinaryOperator} that can be used in reduce operations on a {@link LongStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne(String)}.
+     *
+     * @param message
+     *         the exception message to use
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static LongBinaryOperator toOnlyOneLong(final String message) {
+        return (t, t2) -> {
+            validState(false, message);
+            return 0;
+        };
+    }
+
+    /**
+     * A {@link LongBinaryOperator} that can be used in reduce operations on a {@link LongStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne(String, Object...)}.
+     *
+     * @param message
+     *         the exception message to use
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static LongBinaryOperator toOnlyOneLong(final String message, final Object... values) {
+        return (t, t2) -> {
+            validState(false, message, values);
+            return 0;
+        };
+    }
+
+    /**
+     * A {@link DoubleBinaryOperator} that can be used in reduce operations on a {@link DoubleStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne()}.
+     * <pre>
+     * final OptionalDouble foundId = ids.filter(id -&gt; id == uniqueId).reduce(toOnlyOneDouble());
+     * </pre>
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static DoubleBinaryOperator toOnlyOneDouble() {
+        return toOnlyOneDouble("Duplicates not allowed");
+    }
+
+    /**
+     * A {@link DoubleBinaryOperator} that can be used in reduce operations on a {@link DoubleStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne(String)}.
+     *
+     * @param message
+     *         the exception message to use
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static DoubleBinaryOperator toOnlyOneDouble(final String message) {
+        return (t, t2) -> {
+            validState(false, message);
+            return 0;
+        };
+    }
+
+    /**
+     * A {@link DoubleBinaryOperator} that can be used in reduce operations on a {@link DoubleStream} to ensure it contains at most one element, without boxing. See {@link #toOnlyOne(String, Object...)}.
+     *
+     * @param message
+     *         the exception message to use
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return nothing, as this method will always throw an {@link se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException}
+     */
+    public static DoubleBinaryOperator toOnlyOneDouble(final String message, final Object... values) {
+        return (t, t2) -> {
+            validState(false, message, values);
+            return 0;
+        };
+    }
+
+    // onlyOne / atMostOne
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Returns the single element of a stream, throwing an exception if the stream is empty or contains more than one element. Unlike {@link #toOnlyOne()} this is a short-circuiting terminal
+     * operation, i.e. the stream is not consumed any further once a second element has been found. In a parallel stream all remaining splits are cancelled as soon as a duplicate is detected.
+     * <pre>
+     * final Element element = Streams.onlyOne(streamOfElements.filter(e -&gt; uniqueId.equals(e.id)));
+     * </pre>
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     * @see #atMostOne(Stream)
+     */
+    public static <T> T onlyOne(final Stream<T> stream) {
+        notNull(stream);
+        final Probe<T> probe = Probe.of(stream);
+        validState(probe.count != 0, "No value present");
+        validState(probe.count == 1, "Duplicates not allowed");
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of a stream, throwing an exception with the given message if the stream is empty or contains more than one element.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     * @see #onlyOne(Stream)
+     */
+    // Method without varargs to increase performance
+    public static <T> T onlyOne(final Stream<T> stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final Probe<T> probe = Probe.of(stream);
+        validState(probe.count == 1, message);
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of a stream, throwing an exception with the given formatted message if the stream is empty or contains more than one element.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     * @see #onlyOne(Stream)
+     */
+    public static <T> T onlyOne(final Stream<T> stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final Probe<T> probe = Probe.of(stream);
+        validState(probe.count == 1, message, values);
+        return probe.value;
+    }
+
+    /**
+     * Returns the element of a stream that is allowed to contain at most one element. This is a short-circuiting replacement for {@code reduce(toOnlyOne())}, i.e. the stream is not consumed any
+     * further once a second element has been found, and in a parallel stream all remaining splits are cancelled.
+     * <pre>
+     * final Optional&lt;Element&gt; foundElement = Streams.atMostOne(streamOfElements.filter(e -&gt; uniqueId.equals(e.id)));
+     * </pre>
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     * @throws NullPointerException
+     *         if the element found is null
+     * @see #toOnlyOne()
+     */
+    public static <T> Optional<T> atMostOne(final Stream<T> stream) {
+        return atMostOne(stream, "Duplicates not allowed");
+    }
+
+    /**
+     * Returns the element of a stream that is allowed to contain at most one element, throwing an exception with the given message if there are more.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     * @see #atMostOne(Stream)
+     */
+    // Method without varargs to increase performance
+    public static <T> Optional<T> atMostOne(final Stream<T> stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final Probe<T> probe = Probe.of(stream);
+        validState(probe.count < 2, message);
+        return probe.count == 0 ? Optional.empty() : Optional.of(probe.value);
+    }
+
+    /**
+     * Returns the element of a stream that is allowed to contain at most one element, throwing an exception with the given formatted message if there are more.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     * @see #atMostOne(Stream)
+     */
+    public static <T> Optional<T> atMostOne(final Stream<T> stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final Probe<T> probe = Probe.of(stream);
+        validState(probe.count < 2, message, values);
+        return probe.count == 0 ? Optional.empty() : Optional.of(probe.value);
+    }
+
+    /**
+     * Returns the single element of an {@link IntStream}. See {@link #onlyOne(Stream)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    public static int onlyOne(final IntStream stream) {
+        notNull(stream);
+        final IntProbe probe = IntProbe.of(stream);
+        validState(probe.count != 0, "No value present");
+        validState(probe.count == 1, "Duplicates not allowed");
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of an {@link IntStream}. See {@link #onlyOne(Stream, String)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    // Method without varargs to increase performance
+    public static int onlyOne(final IntStream stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final IntProbe probe = IntProbe.of(stream);
+        validState(probe.count == 1, message);
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of an {@link IntStream}. See {@link #onlyOne(Stream, String, Object...)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    public static int onlyOne(final IntStream stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final IntProbe probe = IntProbe.of(stream);
+        validState(probe.count == 1, message, values);
+        return probe.value;
+    }
+
+    /**
+     * Returns the element of an {@link IntStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    public static OptionalInt atMostOne(final IntStream stream) {
+        return atMostOne(stream, "Duplicates not allowed");
+    }
+
+    /**
+     * Returns the element of an {@link IntStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream, String)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    // Method without varargs to increase performance
+    public static OptionalInt atMostOne(final IntStream stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final IntProbe probe = IntProbe.of(stream);
+        validState(probe.count < 2, message);
+        return probe.count == 0 ? OptionalInt.empty() : OptionalInt.of(probe.value);
+    }
+
+    /**
+     * Returns the element of an {@link IntStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream, String, Object...)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    public static OptionalInt atMostOne(final IntStream stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final IntProbe probe = IntProbe.of(stream);
+        validState(probe.count < 2, message, values);
+        return probe.count == 0 ? OptionalInt.empty() : OptionalInt.of(probe.value);
+    }
+
+    /**
+     * Returns the single element of a {@link LongStream}. See {@link #onlyOne(Stream)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    public static long onlyOne(final LongStream stream) {
+        notNull(stream);
+        final LongProbe probe = LongProbe.of(stream);
+        validState(probe.count != 0, "No value present");
+        validState(probe.count == 1, "Duplicates not allowed");
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of a {@link LongStream}. See {@link #onlyOne(Stream, String)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    // Method without varargs to increase performance
+    public static long onlyOne(final LongStream stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final LongProbe probe = LongProbe.of(stream);
+        validState(probe.count == 1, message);
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of a {@link LongStream}. See {@link #onlyOne(Stream, String, Object...)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    public static long onlyOne(final LongStream stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final LongProbe probe = LongProbe.of(stream);
+        validState(probe.count == 1, message, values);
+        return probe.value;
+    }
+
+    /**
+     * Returns the element of a {@link LongStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    public static OptionalLong atMostOne(final LongStream stream) {
+        return atMostOne(stream, "Duplicates not allowed");
+    }
+
+    /**
+     * Returns the element of a {@link LongStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream, String)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    // Method without varargs to increase performance
+    public static OptionalLong atMostOne(final LongStream stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final LongProbe probe = LongProbe.of(stream);
+        validState(probe.count < 2, message);
+        return probe.count == 0 ? OptionalLong.empty() : OptionalLong.of(probe.value);
+    }
+
+    /**
+     * Returns the element of a {@link LongStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream, String, Object...)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    public static OptionalLong atMostOne(final LongStream stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final LongProbe probe = LongProbe.of(stream);
+        validState(probe.count < 2, message, values);
+        return probe.count == 0 ? OptionalLong.empty() : OptionalLong.of(probe.value);
+    }
+
+    /**
+     * Returns the single element of a {@link DoubleStream}. See {@link #onlyOne(Stream)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    public static double onlyOne(final DoubleStream stream) {
+        notNull(stream);
+        final DoubleProbe probe = DoubleProbe.of(stream);
+        validState(probe.count != 0, "No value present");
+        validState(probe.count == 1, "Duplicates not allowed");
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of a {@link DoubleStream}. See {@link #onlyOne(Stream, String)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    // Method without varargs to increase performance
+    public static double onlyOne(final DoubleStream stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final DoubleProbe probe = DoubleProbe.of(stream);
+        validState(probe.count == 1, message);
+        return probe.value;
+    }
+
+    /**
+     * Returns the single element of a {@link DoubleStream}. See {@link #onlyOne(Stream, String, Object...)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return the only element of the stream
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream is empty or contains more than one element
+     */
+    public static double onlyOne(final DoubleStream stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final DoubleProbe probe = DoubleProbe.of(stream);
+        validState(probe.count == 1, message, values);
+        return probe.value;
+    }
+
+    /**
+     * Returns the element of a {@link DoubleStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    public static OptionalDouble atMostOne(final DoubleStream stream) {
+        return atMostOne(stream, "Duplicates not allowed");
+    }
+
+    /**
+     * Returns the element of a {@link DoubleStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream, String)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the exception message to use, not null
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    // Method without varargs to increase performance
+    public static OptionalDouble atMostOne(final DoubleStream stream, final String message) {
+        notNull(stream);
+        notNull(message);
+        final DoubleProbe probe = DoubleProbe.of(stream);
+        validState(probe.count < 2, message);
+        return probe.count == 0 ? OptionalDouble.empty() : OptionalDouble.of(probe.value);
+    }
+
+    /**
+     * Returns the element of a {@link DoubleStream} that is allowed to contain at most one element. See {@link #atMostOne(Stream, String, Object...)}.
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param message
+     *         the {@link String#format(String, Object...)} exception message to use, not null
+     * @param values
+     *         the optional values for the formatted exception message, null array not recommended
+     *
+     * @return the element, or an empty optional if the stream is empty
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         if the stream contains more than one element
+     */
+    public static OptionalDouble atMostOne(final DoubleStream stream, final String message, final Object... values) {
+        notNull(stream);
+        notNull(message);
+        final DoubleProbe probe = DoubleProbe.of(stream);
+        validState(probe.count < 2, message, values);
+        return probe.count == 0 ? OptionalDouble.empty() : OptionalDouble.of(probe.value);
+    }
+
+    // batch
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Groups the elements of a stream into lists of the given size. The last list contains the remaining elements and may be smaller. Each batch is a new list that the caller is free to keep.
+     * <pre>
+     * Streams.batch(rows, 500).forEach(repository::insertAll);
+     * </pre>
+     * <p>The returned stream is parallel if the given stream is parallel. Splitting is done on batch boundaries, and if the source is {@link java.util.Spliterator#SIZED} and {@link
+     * java.util.Spliterator#SUBSIZED} the returned stream will be so too.</p>
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of batches
+     *
+     * @see #forEachBatch(Stream, int, Consumer)
+     */
+    public static <T> Stream<List<T>> batch(final Stream<T> stream, final int size) {
+        notNull(stream);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        return StreamSupport.stream(new BatchSpliterator<>(stream.spliterator(), size, false), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Groups the elements of an {@link IntStream} into arrays of the given size, without boxing. The last array contains the remaining elements and may be smaller. See {@link #batch(Stream, int)}.
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     *
+     * @return a stream of batches
+     */
+    public static Stream<int[]> batch(final IntStream stream, final int size) {
+        notNull(stream);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        return StreamSupport.stream(new PrimitiveBatchSpliterator.OfInt(stream.spliterator(), size, false), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Groups the elements of a {@link LongStream} into arrays of the given size, without boxing. The last array contains the remaining elements and may be smaller. See {@link #batch(Stream, int)}.
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     *
+     * @return a stream of batches
+     */
+    public static Stream<long[]> batch(final LongStream stream, final int size) {
+        notNull(stream);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        return StreamSupport.stream(new PrimitiveBatchSpliterator.OfLong(stream.spliterator(), size, false), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Groups the elements of a {@link DoubleStream} into arrays of the given size, without boxing. The last array contains the remaining elements and may be smaller. See {@link #batch(Stream, int)}.
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     *
+     * @return a stream of batches
+     */
+    public static Stream<double[]> batch(final DoubleStream stream, final int size) {
+        notNull(stream);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        return StreamSupport.stream(new PrimitiveBatchSpliterator.OfDouble(stream.spliterator(), size, false), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Performs an action for each batch of elements in a stream. For a sequential stream the same list instance is reused for every batch, so the action must not keep a reference to the list after
+     * it returns. For a parallel stream this is the same as {@code batch(stream, size).forEach(action)}.
+     * <pre>
+     * Streams.forEachBatch(events, 1000, queue::sendAll);
+     * </pre>
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     * @param action
+     *         the action to perform on each batch, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @see #batch(Stream, int)
+     */
+    public static <T> void forEachBatch(final Stream<T> stream, final int size, final Consumer<? super List<T>> action) {
+        notNull(stream);
+        notNull(action);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        if (stream.isParallel()) {
+            batch(stream, size).forEach(action);
+        }
+        else {
+            new BatchSpliterator<>(stream.spliterator(), size, true).forEachRemaining(action);
+        }
+    }
+
+    /**
+     * Performs an action for each batch of elements in an {@link IntStream}, without boxing. For a sequential stream the same array instance is reused for every full batch, so the action must not
+     * keep a reference to the array after it returns. The last batch may be smaller and is always a new array. See {@link #forEachBatch(Stream, int, Consumer)}.
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     * @param action
+     *         the action to perform on each batch, not null
+     *
+     * @see #batch(IntStream, int)
+     */
+    public static void forEachBatch(final IntStream stream, final int size, final Consumer<? super int[]> action) {
+        notNull(stream);
+        notNull(action);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        if (stream.isParallel()) {
+            batch(stream, size).forEach(action);
+        }
+        else {
+            new PrimitiveBatchSpliterator.OfInt(stream.spliterator(), size, true).forEachRemaining(action);
+        }
+    }
+
+    /**
+     * Performs an action for each batch of elements in a {@link LongStream}, without boxing. For a sequential stream the same array instance is reused for every full batch, so the action must not
+     * keep a reference to the array after it returns. The last batch may be smaller and is always a new array. See {@link #forEachBatch(Stream, int, Consumer)}.
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     * @param action
+     *         the action to perform on each batch, not null
+     *
+     * @see #batch(LongStream, int)
+     */
+    public static void forEachBatch(final LongStream stream, final int size, final Consumer<? super long[]> action) {
+        notNull(stream);
+        notNull(action);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        if (stream.isParallel()) {
+            batch(stream, size).forEach(action);
+        }
+        else {
+            new PrimitiveBatchSpliterator.OfLong(stream.spliterator(), size, true).forEachRemaining(action);
+        }
+    }
+
+    /**
+     * Performs an action for each batch of elements in a {@link DoubleStream}, without boxing. For a sequential stream the same array instance is reused for every full batch, so the action must not
+     * keep a reference to the array after it returns. The last batch may be smaller and is always a new array. See {@link #forEachBatch(Stream, int, Consumer)}.
+     *
+     * @param stream
+     *         the stream to batch, not null
+     * @param size
+     *         the maximum number of elements in each batch, must be positive
+     * @param action
+     *         the action to perform on each batch, not null
+     *
+     * @see #batch(DoubleStream, int)
+     */
+    public static void forEachBatch(final DoubleStream stream, final int size, final Consumer<? super double[]> action) {
+        notNull(stream);
+        notNull(action);
+        isTrue(size > 0, "Batch size must be positive: %d", size);
+        if (stream.isParallel()) {
+            batch(stream, size).forEach(action);
+        }
+        else {
+            new PrimitiveBatchSpliterator.OfDouble(stream.spliterator(), size, true).forEachRemaining(action);
+        }
+    }
+
+    // windows
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Creates a stream of sliding windows over the elements of an ordered stream. Each window contains {@code size} consecutive elements and the window moves {@code step} elements at a time.
+     * Only complete windows are emitted. E.g. sliding a window of size 3 and step 1 over {@code 1, 2, 3, 4} gives {@code [1, 2, 3], [2, 3, 4]}.
+     * <pre>
+     * final DoubleStream movingAverage = Streams.sliding(prices, 20, 1).mapToDouble(w -&gt; average(w));
+     * </pre>
+     * <p>The windows are read-only views of an internal ring buffer and are only valid until the next window is requested, i.e. a window must be consumed, or copied, by the stage that receives it.
+     * No elements are copied and memory use is bounded by the window size regardless of the length of the stream. The returned stream is always sequential.</p>
+     *
+     * @param stream
+     *         the stream to create windows over, not null
+     * @param size
+     *         the number of elements in each window, must be positive
+     * @param step
+     *         the number of elements the window moves each time, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of windows
+     *
+     * @see #tumbling(Stream, int)
+     */
+    public static <T> Stream<List<T>> sliding(final Stream<T> stream, final int size, final int step) {
+        notNull(stream);
+        isTrue(size > 0, "Window size must be positive: %d", size);
+        isTrue(step > 0, "Window step must be positive: %d", step);
+        return StreamSupport.stream(WindowSpliterator.ofCount(stream.spliterator(), size, step), false)
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Creates a stream of non-overlapping windows of {@code size} consecutive elements. This is the same as {@code sliding(stream, size, size)}, see {@link #sliding(Stream, int, int)} for
+     * details. Trailing elements that do not fill a complete window are not emitted, use {@link #batch(Stream, int)} if they are needed.
+     *
+     * @param stream
+     *         the stream to create windows over, not null
+     * @param size
+     *         the number of elements in each window, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of windows
+     */
+    public static <T> Stream<List<T>> tumbling(final Stream<T> stream, final int size) {
+        return sliding(stream, size, size);
+    }
+
+    /**
+     * Creates a stream of event-time sliding windows. Each window contains the elements with a timestamp in the range {@code [start, start + size)}, where {@code start} is a multiple of {@code
+     * step}. The first window is the one starting at or just before the timestamp of the first element, and windows that would be empty are not emitted. The unit of {@code size} and {@code step}
+     * is the unit of the timestamps, e.g. milliseconds.
+     * <pre>
+     * final Stream&lt;List&lt;Event&gt;&gt; lastMinute = Streams.sliding(events, Event::epochMillis, 60_000, 1_000);
+     * </pre>
+     * <p>Timestamps must be non-decreasing in encounter order. The windows are read-only views with the same life cycle as those of {@link #sliding(Stream, int, int)}. The internal buffer grows
+     * to fit the largest window seen and is then reused. The returned stream is always sequential.</p>
+     *
+     * @param stream
+     *         the stream to create windows over, not null
+     * @param timestamp
+     *         the function extracting the timestamp of an element, not null
+     * @param size
+     *         the length of each window, must be positive
+     * @param step
+     *         the distance between the start of two consecutive windows, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of windows
+     *
+     * @throws se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException
+     *         when the stream is consumed, if a timestamp is less than the timestamp of a previous element
+     */
+    public static <T> Stream<List<T>> sliding(final Stream<T> stream, final ToLongFunction<? super T> timestamp, final long size, final long step) {
+        notNull(stream);
+        notNull(timestamp);
+        isTrue(size > 0, "Window size must be positive: %d", size);
+        isTrue(step > 0, "Window step must be positive: %d", step);
+        return StreamSupport.stream(WindowSpliterator.ofTime(stream.spliterator(), timestamp, size, step), false)
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Creates a stream of non-overlapping event-time windows. This is the same as {@code sliding(stream, timestamp, size, size)}, see {@link #sliding(Stream, ToLongFunction, long, long)} for
+     * details.
+     *
+     * @param stream
+     *         the stream to create windows over, not null
+     * @param timestamp
+     *         the function extracting the timestamp of an element, not null
+     * @param size
+     *         the length of each window, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of windows
+     */
+    public static <T> Stream<List<T>> tumbling(final Stream<T> stream, final ToLongFunction<? super T> timestamp, final long size) {
+        return sliding(stream, timestamp, size, size);
+    }
+
+    // merge
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Merges a number of streams that are each sorted according to the given comparator into one sorted stream, e.g. the sorted partitions or shard results of a larger data set.
+     * <pre>
+     * final Stream&lt;Entry&gt; all = Streams.mergeSorted(comparing(Entry::key), partitions.stream().map(Partition::entries).collect(toList()));
+     * </pre>
+     * <p>This is a lazy alternative to concatenating the streams and calling {@link Stream#sorted(Comparator)}. It takes {@code O(log N)} comparisons per element for {@code N} streams and only
+     * buffers the current head element of each stream, never the whole data set. Elements that compare as equal are emitted in the order of the streams they come from. Whether the streams actually
+     * are sorted is not verified.</p>
+     * <p>The returned stream is sequential and closing it closes all the given streams.</p>
+     *
+     * @param comparator
+     *         the comparator that all the streams are sorted by, not null
+     * @param streams
+     *         the sorted streams to merge, not null
+     * @param <T>
+     *         the type of the elements
+     *
+     * @return a sorted stream of the elements of all the streams
+     *
+     * @see #mergeSorted(Stream[])
+     */
+    @SafeVarargs
+    public static <T> Stream<T> mergeSorted(final Comparator<? super T> comparator, final Stream<? extends T>... streams) {
+        notNull(streams);
+        return mergeSorted(comparator, asList(streams));
+    }
+
+    /**
+     * Merges a number of sorted streams into one sorted stream. See {@link #mergeSorted(Comparator, Stream[])}.
+     *
+     * @param comparator
+     *         the comparator that all the streams are sorted by, not null
+     * @param streams
+     *         the sorted streams to merge, not null
+     * @param <T>
+     *         the type of the elements
+     *
+     * @return a sorted stream of the elements of all the streams
+     */
+    public static <T> Stream<T> mergeSorted(final Comparator<? super T> comparator, final List<? extends Stream<? extends T>> streams) {
+        notNull(comparator);
+        noNullElements(streams);
+        @SuppressWarnings("unchecked")
+        final Spliterator<T>[] sources = new Spliterator[streams.size()];
+        for (int i = 0; i < sources.length; ++i) {
+            @SuppressWarnings("unchecked")
+            final Spliterator<T> source = (Spliterator<T>) streams.get(i).spliterator();
+            sources[i] = source;
+        }
+        final List<Stream<?>> toClose = new ArrayList<>(streams);
+        return StreamSupport.stream(new MergeSpliterator<>(sources, comparator), false)
+                            .onClose(() -> closeAll(toClose));
+    }
+
+    /**
+     * Merges a number of streams of {@link Comparable} elements, each sorted in natural order, into one sorted stream. See {@link #mergeSorted(Comparator, Stream[])}.
+     * <pre>
+     * final Stream&lt;Version&gt; versions = Streams.mergeSorted(localVersions, remoteVersions);
+     * </pre>
+     *
+     * @param streams
+     *         the sorted streams to merge, not null
+     * @param <T>
+     *         the type of the elements
+     *
+     * @return a sorted stream of the elements of all the streams
+     */
+    @SafeVarargs
+    public static <T extends Comparable<? super T>> Stream<T> mergeSorted(final Stream<? extends T>... streams) {
+        return mergeSorted((T a, T b) -> a.compareTo(b), streams);
+    }
+
+    private static void closeAll(final List<Stream<?>> streams) {
+        RuntimeException failure = null;
+        for (final Stream<?> stream : streams) {
+            try {
+                stream.close();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // instrumentation
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Instruments a point in a stream pipeline, recording the elements that pass it in the {@link StageMetrics} of the given stage name. Every element is counted, the thread that processed it is
+     * recorded and the latency of one element in 1024 is measured. See {@link #instrument(Stream, String, int)}.
+     *
+     * @param stream
+     *         the stream to instrument, not null
+     * @param stageName
+     *         the name of the stage, not blank
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the instrumented stream
+     */
+    public static <T> Stream<T> instrument(final Stream<T> stream, final String stageName) {
+        return instrument(stream, stageName, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Instruments a point in a stream pipeline, recording the elements that pass it in the {@link StageMetrics} of the given stage name. The latency of an element is the time it took the part of the
+     * pipeline before the instrumented point to produce it, including any elements that were filtered out. To find the cost of a single stage, instrument the points before and after it and compare
+     * the latencies:
+     * <pre>
+     * final Stream&lt;Order&gt; orders = Streams.instrument(Streams.instrument(ids, "ids").map(this::lookup), "lookup");
+     * ...
+     * System.out.println(StageMetrics.stages());
+     * </pre>
+     * <p>When the stream is parallel each split is instrumented separately and {@link StageMetrics#threadDistribution()} shows how the elements were spread over the worker threads. With a sample
+     * interval of 0 no clock is read and the per element cost is a counter increment. The returned stream is parallel if the given stream is and closing it closes the given stream.</p>
+     *
+     * @param stream
+     *         the stream to instrument, not null
+     * @param stageName
+     *         the name of the stage, not blank
+     * @param sampleInterval
+     *         measure the latency of every {@code sampleInterval}th element, or 0 to not measure latency, must not be negative
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return the instrumented stream
+     */
+    public static <T> Stream<T> instrument(final Stream<T> stream, final String stageName, final int sampleInterval) {
+        notNull(stream);
+        isTrue(sampleInterval >= 0, "Sample interval must not be negative: %d", sampleInterval);
+        final StageMetrics metrics = StageMetrics.of(stageName);
+        return StreamSupport.stream(new InstrumentedSpliterator<>(stream.spliterator(), metrics, sampleInterval), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    // custom pools
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Executes a parallel terminal operation in the given {@link ForkJoinPool} instead of the common pool. The stream is made parallel and passed to the terminal function, which is invoked by a
+     * worker of the pool, so all tasks forked by the stream are executed by that pool. The calling thread blocks until the operation completes.
+     * <pre>
+     * final ForkJoinPool batchPool = new ForkJoinPool(4);
+     * final Optional&lt;Element&gt; element = Streams.parallelIn(batchPool, elements, s -&gt; Streams.atMostOne(s.filter(e -&gt; uniqueId.equals(e.id))));
+     * </pre>
+     * <p>Use {@link PoolStatistics#of(ForkJoinPool)} to monitor the queue depth and steal count of the pool.</p>
+     *
+     * @param pool
+     *         the pool to execute the operation in, not null
+     * @param stream
+     *         the stream to operate on, not null
+     * @param terminal
+     *         the function performing the terminal operation, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <R>
+     *         the type of the result
+     *
+     * @return the result of the terminal operation
+     *
+     * @throws RuntimeException
+     *         any unchecked exception thrown by the terminal operation
+     */
+    public static <T, R> R parallelIn(final ForkJoinPool pool, final Stream<T> stream, final Function<? super Stream<T>, R> terminal) {
+        notNull(pool);
+        notNull(stream);
+        notNull(terminal);
+        return pool.invoke(ForkJoinTask.adapt(() -> terminal.apply(stream.parallel())));
+    }
+
+    /**
+     * Performs an action for each element of a stream using up to {@code parallelism} tasks in the given executor. This is intended for I/O-bound actions where it is desirable to have more
+     * concurrent calls than there are cores, which the fork/join framework does not support well. The calling thread blocks until all elements have been processed.
+     * <pre>
+     * Streams.forEachIn(ioExecutor, 32, documents, index::upload);
+     * </pre>
+     * <p>Elements are handed out one at a time from the stream's spliterator, so the order in which elements are processed is not defined. If the action throws an exception no further elements
+     * are handed out and the first exception is rethrown once the running tasks have finished.</p>
+     *
+     * @param executor
+     *         the executor to run the tasks in, not null
+     * @param parallelism
+     *         the maximum number of tasks running concurrently, must be positive
+     * @param stream
+     *         the stream to consume, not null
+     * @param action
+     *         the action to perform for each element, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @throws RuntimeException
+     *         the first unchecked exception thrown by the action, or a {@link RejectedExecutionException} if the executor rejects a task
+     * @throws CancellationException
+     *         if the calling thread is interrupted while waiting, in which case no further elements are handed out
+     */
+    public static <T> void forEachIn(final Executor executor, final int parallelism, final Stream<T> stream, final Consumer<? super T> action) {
+        notNull(executor);
+        notNull(stream);
+        notNull(action);
+        isTrue(parallelism > 0, "Parallelism must be positive: %d", parallelism);
+        new SharedDrain<>(stream.spliterator(), action, parallelism).executeIn(executor);
+    }
+
+    // checked exceptions
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Adapts a {@link ThrowableFunction} so that it can be used in {@link Stream#map(Function)}. A checked exception thrown by the function is not wrapped, it is rethrown as is and propagates out
+     * of the terminal operation of the stream.
+     * <pre>
+     * try {
+     *     final List&lt;Document&gt; documents = paths.map(mapChecked(this::parse)).collect(toList());
+     * } catch (Exception e) {
+     *     // e is the IOException thrown by parse()
+     * }
+     * </pre>
+     * <p>Since the compiler does not know that the terminal operation may throw a checked exception it must be caught as {@link Exception}. Nothing is allocated per element unless the function
+     * fails. A function on its own cannot stop the other tasks of a parallel stream, use {@link #mapChecked(Stream, ThrowableFunction)} to stop the traversal of the whole stream after the first
+     * failure.</p>
+     *
+     * @param function
+     *         the function to adapt, not null
+     * @param <T>
+     *         the type of the input of the function
+     * @param <R>
+     *         the type of the result of the function
+     *
+     * @return a function that rethrows any exception thrown by the given function
+     */
+    public static <T, R> Function<T, R> mapChecked(final ThrowableFunction<? super T, ? extends R> function) {
+        notNull(function);
+        return t -> {
+            try {
+                return function.apply(t);
+            } catch (Exception e) {
+                throw sneakyThrow(e);
+            }
+        };
+    }
+
+    /**
+     * Adapts a {@link ThrowablePredicate} so that it can be used in {@link Stream#filter(Predicate)}. Exceptions are rethrown in the same way as for {@link #mapChecked(ThrowableFunction)}. Use
+     * {@link #filterChecked(Stream, ThrowablePredicate)} to stop the traversal of a parallel stream after the first failure.
+     *
+     * @param predicate
+     *         the predicate to adapt, not null
+     * @param <T>
+     *         the type of the input to the predicate
+     *
+     * @return a predicate that rethrows any exception thrown by the given predicate
+     */
+    public static <T> Predicate<T> filterChecked(final ThrowablePredicate<? super T> predicate) {
+        notNull(predicate);
+        return t -> {
+            try {
+                return predicate.test(t);
+            } catch (Exception e) {
+                throw sneakyThrow(e);
+            }
+        };
+    }
+
+    /**
+     * Maps the elements of a stream with a {@link ThrowableFunction}. Exceptions are rethrown as for {@link #mapChecked(ThrowableFunction)}, and in addition the first failure stops the traversal of
+     * the source: in a parallel stream the other tasks stop after the element they are processing instead of processing the rest of their part of the stream.
+     * <pre>
+     * final List&lt;Document&gt; documents = Streams.mapChecked(paths.parallel(), this::parse).collect(toList());
+     * </pre>
+     *
+     * @param stream
+     *         the stream to map, not null
+     * @param function
+     *         the function to apply to each element, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <R>
+     *         the type of the result of the function
+     *
+     * @return a stream of the mapped elements
+     */
+    public static <T, R> Stream<R> mapChecked(final Stream<T> stream, final ThrowableFunction<? super T, ? extends R> function) {
+        notNull(stream);
+        notNull(function);
+        final AtomicBoolean failed = new AtomicBoolean();
+        return failFast(stream, failed).map(t -> {
+            try {
+                return function.apply(t);
+            } catch (Exception e) {
+                failed.set(true);
+                throw sneakyThrow(e);
+            }
+        });
+    }
+
+    /**
+     * Filters the elements of a stream with a {@link ThrowablePredicate}. The first failure stops the traversal of the source in the same way as for {@link #mapChecked(Stream,
+     * ThrowableFunction)}.
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param predicate
+     *         the predicate to test each element with, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of the elements matching the predicate
+     */
+    public static <T> Stream<T> filterChecked(final Stream<T> stream, final ThrowablePredicate<? super T> predicate) {
+        notNull(stream);
+        notNull(predicate);
+        final AtomicBoolean failed = new AtomicBoolean();
+        return failFast(stream, failed).filter(t -> {
+            try {
+                return predicate.test(t);
+            } catch (Exception e) {
+                failed.set(true);
+                throw sneakyThrow(e);
+            }
+        });
+    }
+
+    /**
+     * Performs an action that may throw checked exceptions for each element of a stream. The first exception thrown by the action is rethrown as is, without being wrapped. The first failure
+     * stops the traversal of the source, so in a parallel stream the other tasks stop after the element they are processing.
+     * <pre>
+     * Streams.forEachChecked(files, Files::delete);
+     * </pre>
+     *
+     * @param stream
+     *         the stream to consume, not null
+     * @param action
+     *         the action to perform for each element, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @throws Exception
+     *         the first exception thrown by the action
+     */
+    public static <T> void forEachChecked(final Stream<T> stream, final ThrowableConsumer<? super T> action) throws Exception {
+        notNull(stream);
+        notNull(action);
+        final AtomicBoolean failed = new AtomicBoolean();
+        failFast(stream, failed).forEach(t -> {
+            try {
+                action.accept(t);
+            } catch (Exception e) {
+                failed.set(true);
+                throw sneakyThrow(e);
+            }
+        });
+    }
+
+    private static <T> Stream<T> failFast(final Stream<T> stream, final AtomicBoolean failed) {
+        return StreamSupport.stream(new FailFastSpliterator<>(stream.spliterator(), failed), stream.isParallel()).onClose(stream::close);
+    }
+
+    // primitive grouping collectors
+    //---------------------------------------------------------------------------------
+
+    /**
+     * A collector that counts the elements per key without boxing. The result is an {@link ObjectLongMap} rather than the {@code Map<K, Long>} produced by {@code groupingBy(classifier, counting())}.
+     * <pre>
+     * final ObjectLongMap&lt;String&gt; hitsPerPage = requests.collect(Streams.countingBy(Request::page));
+     * </pre>
+     * <p>In a parallel stream each thread counts into its own map and the maps are merged. See {@link #countingByConcurrent(Function)} for a concurrent alternative for unordered streams.</p>
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector counting elements per key
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> countingBy(final Function<? super T, ? extends K> classifier) {
+        return groupingLong(classifier, t -> 1L, Long::sum);
+    }
+
+    /**
+     * A collector that sums a {@code long} property of the elements per key without boxing.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value to sum, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector summing values per key
+     *
+     * @see #countingBy(Function)
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> summingLongBy(final Function<? super T, ? extends K> classifier, final ToLongFunction<? super T> mapper) {
+        return groupingLong(classifier, mapper, Long::sum);
+    }
+
+    /**
+     * A collector that finds the minimum of a {@code long} property of the elements per key without boxing.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector finding the minimum value per key
+     *
+     * @see #countingBy(Function)
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> minLongBy(final Function<? super T, ? extends K> classifier, final ToLongFunction<? super T> mapper) {
+        return groupingLong(classifier, mapper, Math::min);
+    }
+
+    /**
+     * A collector that finds the maximum of a {@code long} property of the elements per key without boxing.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector finding the maximum value per key
+     *
+     * @see #countingBy(Function)
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> maxLongBy(final Function<? super T, ? extends K> classifier, final ToLongFunction<? super T> mapper) {
+        return groupingLong(classifier, mapper, Math::max);
+    }
+
+    /**
+     * A collector that sums a {@code double} property of the elements per key without boxing.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value to sum, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector summing values per key
+     *
+     * @see #countingBy(Function)
+     */
+    public static <T, K> Collector<T, ?, ObjectDoubleMap<K>> summingDoubleBy(final Function<? super T, ? extends K> classifier, final ToDoubleFunction<? super T> mapper) {
+        return groupingDouble(classifier, mapper, Double::sum);
+    }
+
+    /**
+     * A collector that finds the minimum of a {@code double} property of the elements per key without boxing.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector finding the minimum value per key
+     *
+     * @see #countingBy(Function)
+     */
+    public static <T, K> Collector<T, ?, ObjectDoubleMap<K>> minDoubleBy(final Function<? super T, ? extends K> classifier, final ToDoubleFunction<? super T> mapper) {
+        return groupingDouble(classifier, mapper, Math::min);
+    }
+
+    /**
+     * A collector that finds the maximum of a {@code double} property of the elements per key without boxing.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a collector finding the maximum value per key
+     *
+     * @see #countingBy(Function)
+     */
+    public static <T, K> Collector<T, ?, ObjectDoubleMap<K>> maxDoubleBy(final Function<? super T, ? extends K> classifier, final ToDoubleFunction<? super T> mapper) {
+        return groupingDouble(classifier, mapper, Math::max);
+    }
+
+    /**
+     * A concurrent version of {@link #countingBy(Function)}. All threads of a parallel stream count into one map that is divided into lock striped segments, which avoids merging one map per
+     * thread when there are many keys. The collector is {@link Collector.Characteristics#UNORDERED}.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a concurrent collector counting elements per key
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> countingByConcurrent(final Function<? super T, ? extends K> classifier) {
+        return stripedLong(classifier, t -> 1L, Long::sum);
+    }
+
+    /**
+     * A concurrent version of {@link #summingLongBy(Function, ToLongFunction)}. See {@link #countingByConcurrent(Function)}.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value to sum, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a concurrent collector summing values per key
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> summingLongByConcurrent(final Function<? super T, ? extends K> classifier, final ToLongFunction<? super T> mapper) {
+        return stripedLong(classifier, mapper, Long::sum);
+    }
+
+    /**
+     * A concurrent version of {@link #summingDoubleBy(Function, ToDoubleFunction)}. See {@link #countingByConcurrent(Function)}.
+     *
+     * @param classifier
+     *         the function extracting the key of an element, not null
+     * @param mapper
+     *         the function extracting the value to sum, not null
+     * @param <T>
+     *         the type of the elements
+     * @param <K>
+     *         the type of the keys
+     *
+     * @return a concurrent collector summing values per key
+     */
+    public static <T, K> Collector<T, ?, ObjectDoubleMap<K>> summingDoubleByConcurrent(final Function<? super T, ? extends K> classifier, final ToDoubleFunction<? super T> mapper) {
+        return stripedDouble(classifier, mapper, Double::sum);
+    }
+
+    private static <T, K> Collector<T, ?, ObjectLongMap<K>> groupingLong(final Function<? super T, ? extends K> classifier, final ToLongFunction<? super T> mapper,
+                                                                        final LongBinaryOperator operator) {
+        notNull(classifier);
+        notNull(mapper);
+        return Collector.of(ObjectLongMap::new,
+                            (map, t) -> map.merge(classifier.apply(t), mapper.applyAsLong(t), operator),
+                            (left, right) -> left.mergeAll(right, operator));
+    }
+
+    private static <T, K> Collector<T, ?, ObjectDoubleMap<K>> groupingDouble(final Function<? super T, ? extends K> classifier, final ToDoubleFunction<? super T> mapper,
+                                                                            final DoubleBinaryOperator operator) {
+        notNull(classifier);
+        notNull(mapper);
+        return Collector.of(ObjectDoubleMap::new,
+                            (map, t) -> map.merge(classifier.apply(t), mapper.applyAsDouble(t), operator),
+                            (left, right) -> left.mergeAll(right, operator));
+    }
+
+    private static <T, K> Collector<T, ?, ObjectLongMap<K>> stripedLong(final Function<? super T, ? extends K> classifier, final ToLongFunction<? super T> mapper,
+                                                                       final LongBinaryOperator operator) {
+        notNull(classifier);
+        notNull(mapper);
+        return Collector.of(() -> new Striped<ObjectLongMap<K>>(ObjectLongMap::new),
+                            (striped, t) -> {
+                                final K key = classifier.apply(t);
+                                final long value = mapper.applyAsLong(t);
+                                final ObjectLongMap<K> stripe = striped.stripe(key);
+                                synchronized (stripe) {
+                                    stripe.merge(key, value, operator);
+                                }
+                            },
+                            (left, right) -> {
+                                left.forEach(right, (l, r) -> l.mergeAll(r, operator));
+                                return left;
+                            },
+                            striped -> {
+                                final ObjectLongMap<K> result = new ObjectLongMap<>();
+                                striped.forEach(stripe -> result.mergeAll(stripe, operator));
+                                return result;
+                            },
+                            CONCURRENT, UNORDERED);
+    }
+
+    private static <T, K> Collector<T, ?, ObjectDoubleMap<K>> stripedDouble(final Function<? super T, ? extends K> classifier, final ToDoubleFunction<? super T> mapper,
+                                                                           final DoubleBinaryOperator operator) {
+        notNull(classifier);
+        notNull(mapper);
+        return Collector.of(() -> new Striped<ObjectDoubleMap<K>>(ObjectDoubleMap::new),
+                            (striped, t) -> {
+                                final K key = classifier.apply(t);
+                                final double value = mapper.applyAsDouble(t);
+                                final ObjectDoubleMap<K> stripe = striped.stripe(key);
+                                synchronized (stripe) {
+                                    stripe.merge(key, value, operator);
+                                }
+                            },
+                            (left, right) -> {
+                                left.forEach(right, (l, r) -> l.mergeAll(r, operator));
+                                return left;
+                            },
+                            striped -> {
+                                final ObjectDoubleMap<K> result = new ObjectDoubleMap<>();
+                                striped.forEach(stripe -> result.mergeAll(stripe, operator));
+                                return result;
+                            },
+                            CONCURRENT, UNORDERED);
+    }
+
+    // lines
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Reads all lines of a file as a stream of lazily decoded {@link CharSequence}s. The file is memory-mapped and, when the stream is parallel, split at the line breaks closest to the middle of
+     * each part, so that parallel streams scale across cores. Lines that only contain ASCII characters are never decoded or copied, which means that a filter can inspect and reject a line before any
+     * {@link String} is created:
+     * <pre>
+     * final long errors = Streams.lines(log, UTF_8).parallel().filter(line -&gt; ERROR.matcher(line).find()).count();
+     * </pre>
+     * <p>Lines are terminated by a line feed, optionally preceded by a carriage return, and the terminator is not part of the line. Call {@code toString()} on a line to get a {@link String}.</p>
+     * <p>Splitting at byte offsets is only possible for charsets where the line feed byte cannot be part of another character, i.e. UTF-8, US-ASCII and ISO-8859-1. For other charsets this falls
+     * back to {@link Files#lines(Path, Charset)}. Files larger than 1 GiB are mapped in several segments and a single line must not be longer than that.</p>
+     *
+     * @param path
+     *         the path to the file, not null
+     * @param charset
+     *         the charset of the file, not null
+     *
+     * @return a stream of the lines in the file
+     *
+     * @throws IOException
+     *         if the file cannot be opened or mapped
+     */
+    public static Stream<CharSequence> lines(final Path path, final Charset charset) throws IOException {
+        notNull(path);
+        notNull(charset);
+        final boolean singleByte = StandardCharsets.ISO_8859_1.equals(charset);
+        if (!singleByte && !StandardCharsets.UTF_8.equals(charset) && !StandardCharsets.US_ASCII.equals(charset)) {
+            return Files.lines(path, charset).map(line -> line);
+        }
+        final List<Spliterator<CharSequence>> segments = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            final long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                final long length = Math.min(MAX_MAPPED_SEGMENT, size - start);
+                final MappedByteBuffer buffer = channel.map(READ_ONLY, start, length);
+                int end = (int) length;
+                if (start + length < size) {
+                    while (end > 0 && buffer.get(end - 1) != '\n') {
+                        --end;
+                    }
+                    if (end == 0) {
+                        throw new IOException("Line longer than " + MAX_MAPPED_SEGMENT + " bytes at offset " + start + " in " + path);
+                    }
+                }
+                segments.add(new MappedLineSpliterator(buffer, 0, end, charset, singleByte));
+                start += end;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        final Spliterator<CharSequence>[] parts = segments.toArray(new Spliterator[segments.size()]);
+        final int characteristics = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        return StreamSupport.stream(new ConcatenatedSpliterator<>(parts, 0, parts.length, characteristics), false);
+    }
+
+    // async
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Maps the elements of a stream asynchronously, using the default executor for blocking calls. See {@link #mapAsync(Stream, ThrowableFunction, int, Executor)}. The default executor uses
+     * virtual threads when running on a JVM that supports them (Java 21+), otherwise a shared cached pool of daemon threads.
+     *
+     * @param stream
+     *         the stream to map, not null
+     * @param function
+     *         the mapping function, not null
+     * @param maxInFlight
+     *         the maximum number of calls running at the same time, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <R>
+     *         the type of the mapped elements
+     *
+     * @return a stream of the mapped elements, in encounter order
+     */
+    public static <T, R> Stream<R> mapAsync(final Stream<T> stream, final ThrowableFunction<? super T, ? extends R> function, final int maxInFlight) {
+        return mapAsync(stream, function, maxInFlight, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Maps the elements of a stream by calling a, typically blocking, function concurrently in the given executor. At most {@code maxInFlight} calls are running at any time and the results are
+     * emitted in the encounter order of the source stream.
+     * <pre>
+     * final List&lt;Customer&gt; enriched = Streams.mapAsync(customers, crm::lookup, 200, executor).collect(toList());
+     * </pre>
+     * <p>If a call fails, all calls in flight are cancelled and the exception thrown by the function is rethrown, unwrapped, from the terminal operation of the returned stream. Closing the returned
+     * stream also cancels the calls in flight. The source stream is consumed sequentially and the returned stream is always sequential.</p>
+     *
+     * @param stream
+     *         the stream to map, not null
+     * @param function
+     *         the mapping function, not null
+     * @param maxInFlight
+     *         the maximum number of calls running at the same time, must be positive
+     * @param executor
+     *         the executor to run the calls in, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <R>
+     *         the type of the mapped elements
+     *
+     * @return a stream of the mapped elements, in encounter order
+     *
+     * @see #mapAsyncUnordered(Stream, ThrowableFunction, int, Executor)
+     */
+    public static <T, R> Stream<R> mapAsync(final Stream<T> stream, final ThrowableFunction<? super T, ? extends R> function, final int maxInFlight, final Executor executor) {
+        return mapAsync(stream, function, maxInFlight, executor, true);
+    }
+
+    /**
+     * Maps the elements of a stream asynchronously, using the default executor for blocking calls, and emits the results in completion order. See {@link #mapAsync(Stream, ThrowableFunction,
+     * int)}.
+     *
+     * @param stream
+     *         the stream to map, not null
+     * @param function
+     *         the mapping function, not null
+     * @param maxInFlight
+     *         the maximum number of calls running at the same time, must be positive
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <R>
+     *         the type of the mapped elements
+     *
+     * @return a stream of the mapped elements, in completion order
+     */
+    public static <T, R> Stream<R> mapAsyncUnordered(final Stream<T> stream, final ThrowableFunction<? super T, ? extends R> function, final int maxInFlight) {
+        return mapAsyncUnordered(stream, function, maxInFlight, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Maps the elements of a stream concurrently in the given executor and emits the results in completion order. This avoids a slow call holding back results that are already available. See
+     * {@link #mapAsync(Stream, ThrowableFunction, int, Executor)}.
+     *
+     * @param stream
+     *         the stream to map, not null
+     * @param function
+     *         the mapping function, not null
+     * @param maxInFlight
+     *         the maximum number of calls running at the same time, must be positive
+     * @param executor
+     *         the executor to run the calls in, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <R>
+     *         the type of the mapped elements
+     *
+     * @return a stream of the mapped elements, in completion order
+     */
+    public static <T, R> Stream<R> mapAsyncUnordered(final Stream<T> stream, final ThrowableFunction<? super T, ? extends R> function, final int maxInFlight, final Executor executor) {
+        return mapAsync(stream, function, maxInFlight, executor, false);
+    }
+
+    private static <T, R> Stream<R> mapAsync(final Stream<T> stream, final ThrowableFunction<? super T, ? extends R> function, final int maxInFlight, final Executor executor,
+                                             final boolean ordered) {
+        notNull(stream);
+        notNull(function);
+        notNull(executor);
+        isTrue(maxInFlight > 0, "Max in flight must be positive: %d", maxInFlight);
+        final AsyncMapSpliterator<T, R> spliterator = new AsyncMapSpliterator<>(stream.spliterator(), function, maxInFlight, executor, ordered);
+        return StreamSupport.stream(spliterator, false)
+                            .onClose(spliterator::cancel)
+                            .onClose(stream::close);
+    }
+
+    // distinct
+    //---------------------------------------------------------------------------------
+
+    /**
+     * Returns a stream of the elements of the given stream that are distinct by the given key, i.e. for each key only one element is kept. Keys are compared using {@link Object#equals(Object)}.
+     * <pre>
+     * final Stream&lt;Person&gt; onePerEmail = Streams.distinctBy(people, Person::email);
+     * </pre>
+     * <p>For ordered streams the first element in encounter order is kept for each key, and the order of the elements is preserved. This is done lazily for sequential streams, but, just like
+     * {@link Stream#distinct()}, requires a full barrier for ordered parallel streams. For unordered parallel streams the keys are tracked in a concurrent set and which of the duplicates is kept is
+     * not defined. Use {@link Stream#unordered()} to get the concurrent behaviour for a parallel stream where encounter order does not matter. The choice is made when the returned stream is
+     * traversed, so it does not matter if the stream is made parallel before or after this method is called.</p>
+     * <p>All distinct keys are kept in memory. See {@link #distinctByHash(Stream, ToLongFunction, int)} for a memory-bounded alternative.</p>
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param keyExtractor
+     *         the function extracting the key of an element, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     * @param <K>
+     *         the type of the key
+     *
+     * @return a stream of distinct elements
+     */
+    public static <T, K> Stream<T> distinctBy(final Stream<T> stream, final Function<? super T, ? extends K> keyExtractor) {
+        notNull(stream);
+        notNull(keyExtractor);
+        return StreamSupport.stream(new DistinctSpliterator<>(stream.spliterator(), keyExtractor), stream.isParallel())
+                            .onClose(stream::close);
+    }
+
+    /**
+     * Returns a stream of the elements of the given stream that are distinct by a 64 bit hash of their key. This is a memory-bounded alternative to {@link #distinctBy(Stream, Function)} intended
+     * for very large streams. Only the hashes are kept, eight bytes per distinct key, and once more than {@code maxOnHeapKeys} hashes have been seen they are moved off-heap to an open-addressing
+     * table in memory-mapped temporary files.
+     * <pre>
+     * final Stream&lt;Event&gt; unique = Streams.distinctByHash(events, Event::id, 1_000_000);
+     * </pre>
+     * <p>Two elements with the same hash are considered duplicates, so the result is exact if the hash is unique per key, e.g. a {@code long} id, and otherwise subject to the collision
+     * probability of the hash function.</p>
+     * <p>For sequential streams the first element in encounter order is kept for each hash. Parallel streams are deduplicated concurrently, i.e. the order of the remaining elements is
+     * preserved for ordered streams but which of the duplicates is kept is not defined.</p>
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param keyHash
+     *         the function computing a 64 bit hash of the key of an element, not null
+     * @param maxOnHeapKeys
+     *         the number of hashes to keep on the heap before moving to memory-mapped files, must not be negative
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of distinct elements
+     *
+     * @throws java.io.UncheckedIOException
+     *         when the stream is consumed, if the memory-mapped files cannot be created
+     */
+    public static <T> Stream<T> distinctByHash(final Stream<T> stream, final ToLongFunction<? super T> keyHash, final int maxOnHeapKeys) {
+        notNull(stream);
+        notNull(keyHash);
+        isTrue(maxOnHeapKeys >= 0, "Max on-heap keys must not be negative: %d", maxOnHeapKeys);
+        final SpillableLongSet seen = new SpillableLongSet(maxOnHeapKeys);
+        return stream.filter(t -> seen.add(keyHash.applyAsLong(t)));
+    }
+
+    /**
+     * Returns a stream of the elements of the given stream whose key has most likely not been seen before, using a Bloom filter. This removes duplicates using a constant amount of memory, at the
+     * cost of also removing a small fraction of elements that are not duplicates (false positives). Duplicates are never let through, except when two equal keys are processed at the same time by
+     * different threads of a parallel stream.
+     * <pre>
+     * final Stream&lt;LogLine&gt; deduplicated = Streams.approximatelyDistinct(lines, LogLine::message, 10_000_000, 0.001);
+     * </pre>
+     * <p>Keys are hashed using {@link Object#hashCode()}, which is only 32 bits wide. Distinct keys with the same hash code are always treated as duplicates, whatever the size of the filter, so
+     * the false positive rate has a floor of about {@code n / 2^32} after {@code n} distinct keys, e.g. 0.23% after 10 million keys. Use {@link #approximatelyDistinctByHash(Stream, ToLongFunction,
+     * long, double)} with a 64 bit hash of the key for large streams or low false positive rates.</p>
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param keyExtractor
+     *         the function extracting the key of an element, not null
+     * @param expectedInsertions
+     *         the number of distinct keys expected, must be positive
+     * @param fpp
+     *         the desired false positive probability, must be greater than 0 and less than 1
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of approximately distinct elements
+     *
+     * @see #approximatelyDistinct(Stream, Function, ConcurrentBloomFilter)
+     */
+    public static <T> Stream<T> approximatelyDistinct(final Stream<T> stream, final Function<? super T, ?> keyExtractor, final long expectedInsertions, final double fpp) {
+        return approximatelyDistinct(stream, keyExtractor, ConcurrentBloomFilter.create(expectedInsertions, fpp));
+    }
+
+    /**
+     * Returns a stream of the elements of the given stream whose key has most likely not been added to the given Bloom filter before. The filter may be shared between streams and can be used to
+     * monitor the memory footprint and fill ratio. See {@link #approximatelyDistinct(Stream, Function, long, double)}, including the limit on the false positive rate caused by the 32 bit hash code.
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param keyExtractor
+     *         the function extracting the key of an element, not null
+     * @param filter
+     *         the filter to record keys in, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of approximately distinct elements
+     */
+    public static <T> Stream<T> approximatelyDistinct(final Stream<T> stream, final Function<? super T, ?> keyExtractor, final ConcurrentBloomFilter filter) {
+        notNull(stream);
+        notNull(keyExtractor);
+        notNull(filter);
+        return stream.filter(t -> filter.put(Objects.hashCode(keyExtractor.apply(t))));
+    }
+
+    /**
+     * Returns a stream of the elements of the given stream whose 64 bit key hash has most likely not been seen before, using a Bloom filter. This works like {@link #approximatelyDistinct(Stream,
+     * Function, long, double)} but avoids the false positive floor of 32 bit hash codes, so the configured false positive probability holds also for very large streams.
+     * <pre>
+     * final Stream&lt;Event&gt; deduplicated = Streams.approximatelyDistinctByHash(events, Event::id, 10_000_000, 0.001);
+     * </pre>
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param keyHash
+     *         the function computing a 64 bit hash of the key of an element, not null
+     * @param expectedInsertions
+     *         the number of distinct keys expected, must be positive
+     * @param fpp
+     *         the desired false positive probability, must be greater than 0 and less than 1
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of approximately distinct elements
+     *
+     * @see #approximatelyDistinctByHash(Stream, ToLongFunction, ConcurrentBloomFilter)
+     */
+    public static <T> Stream<T> approximatelyDistinctByHash(final Stream<T> stream, final ToLongFunction<? super T> keyHash, final long expectedInsertions, final double fpp) {
+        return approximatelyDistinctByHash(stream, keyHash, ConcurrentBloomFilter.create(expectedInsertions, fpp));
+    }
+
+    /**
+     * Returns a stream of the elements of the given stream whose 64 bit key hash has most likely not been added to the given Bloom filter before. See {@link #approximatelyDistinctByHash(Stream,
+     * ToLongFunction, long, double)}.
+     *
+     * @param stream
+     *         the stream to filter, not null
+     * @param keyHash
+     *         the function computing a 64 bit hash of the key of an element, not null
+     * @param filter
+     *         the filter to record key hashes in, not null
+     * @param <T>
+     *         the type of the elements in the stream
+     *
+     * @return a stream of approximately distinct elements
+     */
+    public static <T> Stream<T> approximatelyDistinctByHash(final Stream<T> stream, final ToLongFunction<? super T> keyHash, final ConcurrentBloomFilter filter) {
+        notNull(stream);
+        notNull(keyHash);
+        notNull(filter);
+        return stream.filter(t -> filter.put(keyHash.applyAsLong(t)));
+    }
+
+    /**
+     * Looks for at most two elements in a stream. Sequential streams are probed with {@link Spliterator#tryAdvance(Consumer)}, parallel streams use a short-circuiting {@code anyMatch} so that
+     * the remaining splits are cancelled as soon as a second element is seen. {@code count} is 0, 1 or 2 (meaning "two or more").
+     */
+    private static final class Probe<T> implements Consumer<T> {
+        int count;
+        T value;
+
+        static <T> Probe<T> of(final Stream<T> stream) {
+            final Probe<T> probe = new Probe<>();
+            if (stream.isParallel()) {
+                final AtomicInteger seen = new AtomicInteger();
+                final AtomicReference<T> first = new AtomicReference<>();
+                final boolean duplicate = stream.anyMatch(t -> {
+                    if (seen.incrementAndGet() == 1) {
+                        first.set(t);
+                        return false;
+                    }
+                    return true;
+                });
+                probe.count = duplicate ? 2 : seen.get();
+                probe.value = first.get();
+            }
+            else {
+                final Spliterator<T> spliterator = stream.spliterator();
+                if (spliterator.tryAdvance(probe)) {
+                    final T first = probe.value;
+                    probe.count = spliterator.tryAdvance(probe) ? 2 : 1;
+                    probe.value = first;
+                }
+            }
+            return probe;
+        }
+
+        @Override
+        public void accept(final T t) {
+            value = t;
+        }
+    }
+
+    private static final class IntProbe implements IntConsumer {
+        int count;
+        int value;
+
+        static IntProbe of(final IntStream stream) {
+            final IntProbe probe = new IntProbe();
+            if (stream.isParallel()) {
+                final AtomicInteger seen = new AtomicInteger();
+                final AtomicInteger first = new AtomicInteger();
+                final boolean duplicate = stream.anyMatch(i -> {
+                    if (seen.incrementAndGet() == 1) {
+                        first.set(i);
+                        return false;
+                    }
+                    return true;
+                });
+                probe.count = duplicate ? 2 : seen.get();
+                probe.value = first.get();
+            }
+            else {
+                final Spliterator.OfInt spliterator = stream.spliterator();
+                if (spliterator.tryAdvance((IntConsumer) probe)) {
+                    final int first = probe.value;
+                    probe.count = spliterator.tryAdvance((IntConsumer) probe) ? 2 : 1;
+                    probe.value = first;
+                }
+            }
+            return probe;
+        }
+
+        @Override
+        public void accept(final int value) {
+            this.value = value;
+        }
+    }
+
+    private static final class LongProbe implements LongConsumer {
+        int count;
+        long value;
+
+        static LongProbe of(final LongStream stream) {
+            final LongProbe probe = new LongProbe();
+            if (stream.isParallel()) {
+                final AtomicInteger seen = new AtomicInteger();
+                final AtomicLong first = new AtomicLong();
+                final boolean duplicate = stream.anyMatch(l -> {
+                    if (seen.incrementAndGet() == 1) {
+                        first.set(l);
+                        return false;
+                    }
+                    return true;
+                });
+                probe.count = duplicate ? 2 : seen.get();
+                probe.value = first.get();
+            }
+            else {
+                final Spliterator.OfLong spliterator = stream.spliterator();
+                if (spliterator.tryAdvance((LongConsumer) probe)) {
+                    final long first = probe.value;
+                    probe.count = spliterator.tryAdvance((LongConsumer) probe) ? 2 : 1;
+                    probe.value = first;
+                }
+            }
+            return probe;
+        }
+
+        @Override
+        public void accept(final long value) {
+            this.value = value;
+        }
+    }
+
+    private static final class DoubleProbe implements DoubleConsumer {
+        int count;
+        double value;
+
+        static DoubleProbe of(final DoubleStream stream) {
+            final DoubleProbe probe = new DoubleProbe();
+            if (stream.isParallel()) {
+                final AtomicInteger seen = new AtomicInteger();
+                final AtomicLong first = new AtomicLong();
+                final boolean duplicate = stream.anyMatch(d -> {
+                    if (seen.incrementAndGet() == 1) {
+                        first.set(Double.doubleToRawLongBits(d));
+                        return false;
+                    }
+                    return true;
+                });
+                probe.count = duplicate ? 2 : seen.get();
+                probe.value = Double.longBitsToDouble(first.get());
+            }
+            else {
+                final Spliterator.OfDouble spliterator = stream.spliterator();
+                if (spliterator.tryAdvance((DoubleConsumer) probe)) {
+                    final double first = probe.value;
+                    probe.count = spliterator.tryAdvance((DoubleConsumer) probe) ? 2 : 1;
+                    probe.value = first;
+                }
+            }
+            return probe;
+        }
+
+        @Override
+        public void accept(final double value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Drains a spliterator from several threads, handing out one element at a time. Used for I/O-bound work where the cost of the lock is negligible.
+     */
+    private static final class SharedDrain<T> implements Runnable {
+        private final Spliterator<T> source;
+        private final Consumer<? super T> action;
+        private final CountDownLatch done;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        SharedDrain(final Spliterator<T> source, final Consumer<? super T> action, final int parallelism) {
+            this.source = source;
+            this.action = action;
+            this.done = new CountDownLatch(parallelism);
+        }
+
+        void executeIn(final Executor executor) {
+            final long tasks = done.getCount();
+            for (long i = 0; i < tasks; ++i) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    failure.compareAndSet(null, e);
+                    for (long j = i; j < tasks; ++j) {
+                        done.countDown();
+                    }
+                    break;
+                }
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for stream to be consumed");
+            }
+            final Throwable t = failure.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t != null) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        public void run() {
+            final Probe<T> next = new Probe<>();
+            try {
+                while (failure.get() == null && advance(next)) {
+                    final T t = next.value;
+                    next.value = null;
+                    action.accept(t);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private boolean advance(final Probe<T> next) {
+            synchronized (source) {
+                return source.tryAdvance(next);
+            }
+        }
+    }
+
+    /**
+     * A fixed number of maps, each guarded by its own lock, where a key always goes to the same map. The maps pick the slot of a key from the low bits of the mixed hash code, so the stripe is
+     * picked from the high bits. Otherwise all keys in a stripe would share their low bits and pile up in a fraction of the slots.
+     */
+    static final class Striped<M> {
+        static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+        private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+        private final Object[] stripes = new Object[STRIPES];
+
+        Striped(final Supplier<M> factory) {
+            for (int i = 0; i < STRIPES; ++i) {
+                stripes[i] = factory.get();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        M stripe(final Object key) {
+            return (M) stripes[index(key)];
+        }
+
+        static int index(final Object key) {
+            return (int) (Hashing.mix(Objects.hashCode(key)) >>> STRIPE_SHIFT);
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(final Consumer<M> action) {
+            for (final Object stripe : stripes) {
+                action.accept((M) stripe);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(final Striped<M> other, final BiConsumer<M, M> action) {
+            for (int i = 0; i < STRIPES; ++i) {
+                action.accept((M) stripes[i], (M) other.stripes[i]);
+            }
+        }
+    }
 }
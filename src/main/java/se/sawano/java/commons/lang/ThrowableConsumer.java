@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+/**
+ * A consumer that can throw checked exceptions. In general, try to avoid the use of checked exceptions. However, this can be useful when dealing with legacy/3rd party APIs.
+ *
+ * @param <T>
+ *         the type of the input to the operation
+ *
+ * @see java.util.function.Consumer
+ */
+@FunctionalInterface
+public interface ThrowableConsumer<T> {
+
+    void accept(T t) throws Exception;
+}
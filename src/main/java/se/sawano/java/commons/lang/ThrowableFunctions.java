@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Utility methods for working with {@link ThrowableFunction}s.
+ */
+public class ThrowableFunctions {
+
+    private ThrowableFunctions() {}
+
+    /**
+     * Creates a function that caches the results of a pure but expensive function in a bounded, concurrent cache. Concurrent calls with the same argument share a single call to the given function,
+     * so a burst of identical arguments only causes one call. Results are cached until they are evicted by the frequency aware eviction policy, or invalidated. Failed calls are not cached.
+     * <pre>
+     * final CachedFunction&lt;String, Profile&gt; profiles = ThrowableFunctions.cached(client::fetchProfile, 10_000);
+     * ...
+     * log.info("Profile cache: {}", profiles.statistics());
+     * </pre>
+     * See {@link CachedFunction} for details.
+     *
+     * @param function
+     *         the function to cache, not null
+     * @param maxSize
+     *         the maximum number of cached results, must be positive
+     * @param <T>
+     *         the type of the input of the function
+     * @param <R>
+     *         the type of the result of the function
+     *
+     * @return a caching function
+     */
+    public static <T, R> CachedFunction<T, R> cached(final ThrowableFunction<? super T, ? extends R> function, final int maxSize) {
+        notNull(function);
+        isTrue(maxSize > 0, "Max size must be positive: %d", maxSize);
+        return new CachedFunction<>(function, maxSize);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Utility methods for working with {@link ThrowableSupplier}s.
+ */
+public class ThrowableSuppliers {
+
+    private ThrowableSuppliers() {}
+
+    /**
+     * Defines what a memoizing supplier does when the underlying supplier throws an exception.
+     */
+    public enum ExceptionPolicy {
+        /**
+         * The exception is thrown to the callers that waited for the failed load and is not cached, so the next call tries again.
+         */
+        RETRY,
+        /**
+         * The exception is cached like a value and thrown to every caller until it expires. This protects a failing resource from being called over and over. The same exception instance is thrown
+         * to all callers.
+         */
+        CACHE
+    }
+
+    /**
+     * Creates a supplier that calls the given supplier once and then returns the same value forever. Exceptions are not cached, see {@link #memoize(ThrowableSupplier, ExceptionPolicy)}.
+     * <pre>
+     * private final ThrowableSupplier&lt;Config&gt; config = ThrowableSuppliers.memoize(this::fetchConfig);
+     * </pre>
+     *
+     * @param supplier
+     *         the supplier to memoize, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return a memoizing supplier
+     */
+    public static <T> ThrowableSupplier<T> memoize(final ThrowableSupplier<? extends T> supplier) {
+        return memoize(supplier, ExceptionPolicy.RETRY);
+    }
+
+    /**
+     * Creates a supplier that calls the given supplier once and then returns the same value forever. This replaces hand written double-checked locking: once loaded, the value is read from a volatile
+     * field without locking. Concurrent callers of the first load wait for a single call to the given supplier.
+     *
+     * @param supplier
+     *         the supplier to memoize, not null
+     * @param exceptionPolicy
+     *         what to do when the supplier throws an exception, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return a memoizing supplier
+     */
+    public static <T> ThrowableSupplier<T> memoize(final ThrowableSupplier<? extends T> supplier, final ExceptionPolicy exceptionPolicy) {
+        notNull(supplier);
+        notNull(exceptionPolicy);
+        return new MemoizingSupplier<>(supplier, Long.MAX_VALUE, 0, exceptionPolicy == ExceptionPolicy.CACHE, null, System::nanoTime);
+    }
+
+    /**
+     * Creates a supplier that caches the value of the given supplier for a limited time and refreshes it in the background before it expires. Exceptions are not cached and refreshes run in the
+     * default executor for blocking calls, see {@link #memoizeWithExpiry(ThrowableSupplier, Duration, Duration, ExceptionPolicy, Executor)}.
+     * <pre>
+     * private final ThrowableSupplier&lt;Token&gt; token = ThrowableSuppliers.memoizeWithExpiry(this::mintToken, Duration.ofMinutes(10), Duration.ofMinutes(1));
+     * </pre>
+     *
+     * @param supplier
+     *         the supplier to memoize, not null
+     * @param timeToLive
+     *         how long a value is cached, must be positive
+     * @param refreshAhead
+     *         how long before expiry a background refresh starts, zero for no refresh, must be less than the time to live
+     * @param <T>
+     *         the type of the value
+     *
+     * @return a memoizing supplier
+     */
+    public static <T> ThrowableSupplier<T> memoizeWithExpiry(final ThrowableSupplier<? extends T> supplier, final Duration timeToLive, final Duration refreshAhead) {
+        return memoizeWithExpiry(supplier, timeToLive, refreshAhead, ExceptionPolicy.RETRY, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Creates a supplier that caches the value of the given supplier for a limited time. Reading a cached value never takes a lock. When a value has expired the next caller loads a new one, and
+     * concurrent callers wait for that single load.
+     *
+     * <p>If {@code refreshAhead} is positive, the first call within {@code refreshAhead} of the expiry starts a refresh in the executor and keeps returning the current value. As long as a refresh
+     * completes before the value expires, callers never wait for a load after the first one. If a background refresh fails, the current value is kept and the next call tries again, regardless of
+     * the exception policy.</p>
+     *
+     * <p>No lock or monitor is held while loading, so loading from a virtual thread does not pin its carrier. A value is never replaced by the value of a load that started before it, e.g. a slow
+     * background refresh.</p>
+     *
+     * @param supplier
+     *         the supplier to memoize, not null
+     * @param timeToLive
+     *         how long a value, or a cached exception, is cached, must be positive
+     * @param refreshAhead
+     *         how long before expiry a background refresh starts, zero for no refresh, must be less than the time to live
+     * @param exceptionPolicy
+     *         what to do when the supplier throws an exception, not null
+     * @param executor
+     *         the executor to run background refreshes in, not null
+     * @param <T>
+     *         the type of the value
+     *
+     * @return a memoizing supplier
+     */
+    public static <T> ThrowableSupplier<T> memoizeWithExpiry(final ThrowableSupplier<? extends T> supplier, final Duration timeToLive, final Duration refreshAhead,
+                                                             final ExceptionPolicy exceptionPolicy, final Executor executor) {
+        notNull(supplier);
+        notNull(timeToLive);
+        notNull(refreshAhead);
+        notNull(exceptionPolicy);
+        notNull(executor);
+        isTrue(!timeToLive.isNegative() && !timeToLive.isZero(), "Time to live must be positive: %s", timeToLive);
+        isTrue(!refreshAhead.isNegative() && refreshAhead.compareTo(timeToLive) < 0, "Refresh ahead must not be negative and less than the time to live: %s", refreshAhead);
+        return new MemoizingSupplier<>(supplier, nanos(timeToLive), nanos(refreshAhead), exceptionPolicy == ExceptionPolicy.CACHE, executor, System::nanoTime);
+    }
+
+    private static long nanos(final Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+/**
+ * Internal helpers for propagating exceptions.
+ */
+final class Throwables {
+
+    private Throwables() {}
+
+    /**
+     * Throws the given throwable without wrapping it, even if it is a checked exception. The declared return type allows callers to write {@code throw sneakyThrow(e);} so that the compiler knows
+     * the statement does not complete normally.
+     */
+    static RuntimeException sneakyThrow(final Throwable t) {
+        Throwables.<RuntimeException>throwAs(t);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> void throwAs(final Throwable t) throws E {
+        throw (E) t;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static se.sawano.java.commons.lang.Throwables.sneakyThrow;
+import static se.sawano.java.commons.lang.validate.Validate.isTrue;
+import static se.sawano.java.commons.lang.validate.Validate.notNull;
+
+/**
+ * Runs calls that may hang with a deadline. The deadline of a call is kept in a thread local context while the call runs, so nested calls made with {@link #call(ThrowableSupplier, Duration,
+ * Executor)} never get more time than what remains of the outer deadline, and other code can check {@link #remaining()}:
+ * <pre>
+ * final Order order = Timeouts.call(() -&gt; {
+ *     final Customer customer = Timeouts.call(() -&gt; crm.lookup(id), Duration.ofSeconds(5), executor); // gets at most the remaining ~2 s
+ *     return orders.latest(customer);
+ * }, Duration.ofSeconds(2), executor);
+ * </pre>
+ */
+public class Timeouts {
+
+    // About 146 years, so that adding it to System.nanoTime() cannot overflow in practice
+    private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 2;
+    private static final ThreadLocal<Deadline> DEADLINE = ThreadLocal.withInitial(Deadline::new);
+
+    private Timeouts() {}
+
+    /**
+     * Calls a supplier with a deadline, using the default executor for blocking calls. See {@link #call(ThrowableSupplier, Duration, Executor)}. The default executor uses virtual threads when
+     * running on a JVM that supports them (Java 21+), otherwise a shared cached pool of daemon threads.
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param timeout
+     *         the maximum time to wait for the result, must be positive
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the supplier
+     *
+     * @throws TimeoutException
+     *         if the deadline passes before the supplier returns
+     * @throws Exception
+     *         any exception thrown by the supplier, or an {@link InterruptedException} if the calling thread is interrupted
+     */
+    public static <T> T call(final ThrowableSupplier<? extends T> supplier, final Duration timeout) throws Exception {
+        return call(supplier, timeout, AsyncExecutors.blocking());
+    }
+
+    /**
+     * Calls a supplier in the given executor and waits at most until the deadline for the result. The deadline is the given timeout from now, or the deadline of the calling thread's context if that
+     * is earlier. If the deadline passes, the call is cancelled and interrupted and a {@link TimeoutException} is thrown. If the deadline has already passed, the supplier is not called at all.
+     *
+     * <p>The executor should have threads to spare, e.g. a cached pool or virtual threads. Note that a call that does not respond to interruption keeps running in the executor after the timeout.</p>
+     *
+     * @param supplier
+     *         the supplier to call, not null
+     * @param timeout
+     *         the maximum time to wait for the result, must be positive
+     * @param executor
+     *         the executor to run the supplier in, not null
+     * @param <T>
+     *         the type of the result
+     *
+     * @return the result of the supplier
+     *
+     * @throws TimeoutException
+     *         if the deadline passes before the supplier returns
+     * @throws Exception
+     *         any exception thrown by the supplier, or an {@link InterruptedException} if the calling thread is interrupted
+     */
+    public static <T> T call(final ThrowableSupplier<? extends T> supplier, final Duration timeout, final Executor executor) throws Exception {
+        notNull(supplier);
+        notNull(timeout);
+        notNull(executor);
+        isTrue(!timeout.isNegative() && !timeout.isZero(), "Timeout must be positive: %s", timeout);
+        final long now = System.nanoTime();
+        final long deadline = earliest(DEADLINE.get(), now + nanos(timeout));
+        final long remaining = deadline - now;
+        if (remaining <= 0) {
+            throw new TimeoutException("Deadline has already passed");
+        }
+        final FutureTask<T> task = new FutureTask<>(() -> callWithDeadline(supplier, deadline));
+        executor.execute(task);
+        try {
+            return task.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw sneakyThrow(e.getCause());
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            throw new TimeoutException("Call did not complete within " + Duration.ofNanos(remaining));
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the time that remains until the deadline of the current thread's context, which may be negative, or an empty optional if the current thread is not running a call with a deadline
+     */
+    public static Optional<Duration> remaining() {
+        final Deadline context = DEADLINE.get();
+        return context.active ? Optional.of(Duration.ofNanos(context.nanos - System.nanoTime())) : Optional.empty();
+    }
+
+    private static <T> T callWithDeadline(final ThrowableSupplier<? extends T> supplier, final long deadline) throws Exception {
+        final Deadline context = DEADLINE.get();
+        final boolean wasActive = context.active;
+        final long previous = context.nanos;
+        context.active = true;
+        context.nanos = deadline;
+        try {
+            return supplier.get();
+        } finally {
+            context.active = wasActive;
+            context.nanos = previous;
+        }
+    }
+
+    private static long earliest(final Deadline context, final long deadline) {
+        return context.active && context.nanos - deadline < 0 ? context.nanos : deadline;
+    }
+
+    private static long nanos(final Duration duration) {
+        if (duration.compareTo(Duration.ofNanos(MAX_TIMEOUT_NANOS)) > 0) {
+            return MAX_TIMEOUT_NANOS;
+        }
+        return duration.toNanos();
+    }
+
+    private static final class Deadline {
+        boolean active;
+        long nanos;
+    }
+}
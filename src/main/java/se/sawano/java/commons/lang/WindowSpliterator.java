@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import static se.sawano.java.commons.lang.validate.Validate.validState;
+
+/**
+ * Spliterators that emit windows over the elements of an ordered source. Windows are read-only views of a {@link RingBuffer} and are only valid until the next window is requested. Windows are
+ * inherently sequential, so these spliterators never split.
+ *
+ * @param <T>
+ *         the type of the elements in the source
+ */
+abstract class WindowSpliterator<T> implements Spliterator<List<T>>, Consumer<T> {
+
+    final Spliterator<T> source;
+    final RingBuffer<T> buffer;
+
+    WindowSpliterator(final Spliterator<T> source, final RingBuffer<T> buffer) {
+        this.source = source;
+        this.buffer = buffer;
+    }
+
+    /**
+     * A window of a fixed number of elements that slides {@code step} elements at a time. Only complete windows are emitted.
+     */
+    static <T> WindowSpliterator<T> ofCount(final Spliterator<T> source, final int size, final int step) {
+        return new CountWindowSpliterator<>(source, size, step);
+    }
+
+    /**
+     * A window covering the half-open timestamp range {@code [start, start + size)}, where {@code start} is a multiple of {@code step}. Empty windows are not emitted.
+     */
+    static <T> WindowSpliterator<T> ofTime(final Spliterator<T> source, final ToLongFunction<? super T> timestamp, final long size, final long step) {
+        return new TimeWindowSpliterator<>(source, timestamp, size, step);
+    }
+
+    @Override
+    public Spliterator<List<T>> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    private static final class CountWindowSpliterator<T> extends WindowSpliterator<T> {
+
+        private final int size;
+        private final int step;
+        private int consumed;
+        private int skip;
+
+        CountWindowSpliterator(final Spliterator<T> source, final int size, final int step) {
+            super(source, new RingBuffer<>(size, false));
+            this.size = size;
+            this.step = step;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super List<T>> action) {
+            if (consumed > 0) {
+                final int drop = Math.min(consumed, buffer.size());
+                buffer.removeFirst(drop);
+                skip = consumed - drop;
+                consumed = 0;
+            }
+            while (buffer.size() < size) {
+                if (!source.tryAdvance(this)) {
+                    return false;
+                }
+            }
+            consumed = step;
+            action.accept(buffer.head(size));
+            return true;
+        }
+
+        @Override
+        public void accept(final T t) {
+            if (skip > 0) {
+                --skip;
+            }
+            else {
+                buffer.add(t);
+            }
+        }
+    }
+
+    private static final class TimeWindowSpliterator<T> extends WindowSpliterator<T> {
+
+        private final ToLongFunction<? super T> timestamp;
+        private final long size;
+        private final long step;
+        private long windowStart;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private boolean started;
+        private boolean exhausted;
+
+        TimeWindowSpliterator(final Spliterator<T> source, final ToLongFunction<? super T> timestamp, final long size, final long step) {
+            super(source, new RingBuffer<>(16, true));
+            this.timestamp = timestamp;
+            this.size = size;
+            this.step = step;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super List<T>> action) {
+            if (!started) {
+                if (!pull()) {
+                    return false;
+                }
+                windowStart = Math.floorDiv(buffer.timestamp(0), step) * step;
+                started = true;
+            }
+            while (true) {
+                final long windowEnd = windowStart + size;
+                while (!exhausted && (buffer.size() == 0 || lastTimestamp < windowEnd)) {
+                    exhausted = !pull();
+                }
+                int drop = 0;
+                while (drop < buffer.size() && buffer.timestamp(drop) < windowStart) {
+                    ++drop;
+                }
+                buffer.removeFirst(drop);
+                if (buffer.size() == 0) {
+                    return false;
+                }
+                int length = 0;
+                while (length < buffer.size() && buffer.timestamp(length) < windowEnd) {
+                    ++length;
+                }
+                if (length > 0) {
+                    windowStart += step;
+                    action.accept(buffer.head(length));
+                    return true;
+                }
+                // Skip empty windows by jumping to the first window that contains the head of the buffer
+                windowStart = Math.max(windowStart + step, Math.floorDiv(buffer.timestamp(0) - size, step) * step + step);
+            }
+        }
+
+        @Override
+        public void accept(final T t) {
+            final long ts = timestamp.applyAsLong(t);
+            if (ts < lastTimestamp) {
+                validState(false, "Timestamps must be non-decreasing: %d < %d", ts, lastTimestamp);
+            }
+            lastTimestamp = ts;
+            buffer.add(t, ts);
+        }
+
+        private boolean pull() {
+            return source.tryAdvance(this);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.After;
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchLoaderTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ConcurrentLinkedQueue<List<Integer>> batches = new ConcurrentLinkedQueue<>();
+
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void should_dispatch_full_batch_without_waiting_for_window() throws Exception {
+        final BatchLoader<Integer, String> loader = BatchLoader.of(this::names, 3, Duration.ofHours(1), scheduler);
+
+        final CompletableFuture<String> one = loader.load(1);
+        final CompletableFuture<String> two = loader.load(2);
+        final CompletableFuture<String> three = loader.load(3);
+
+        assertEquals("1", one.get(5, TimeUnit.SECONDS));
+        assertEquals("2", two.get(5, TimeUnit.SECONDS));
+        assertEquals("3", three.get(5, TimeUnit.SECONDS));
+        assertEquals(asList(asList(1, 2, 3)), new ArrayList<>(batches));
+    }
+
+    @Test
+    public void should_dispatch_partial_batch_when_window_has_passed() throws Exception {
+        final BatchLoader<Integer, String> loader = BatchLoader.of(this::names, 100, Duration.ofMillis(20), scheduler);
+
+        final CompletableFuture<String> one = loader.load(1);
+        final CompletableFuture<String> two = loader.load(2);
+
+        assertEquals("1", one.get(5, TimeUnit.SECONDS));
+        assertEquals("2", two.get(5, TimeUnit.SECONDS));
+        assertEquals(asList(asList(1, 2)), new ArrayList<>(batches));
+    }
+
+    @Test
+    public void should_deduplicate_keys_within_batch() throws Exception {
+        final BatchLoader<Integer, String> loader = BatchLoader.of(this::names, 4, Duration.ofHours(1), scheduler);
+
+        final CompletableFuture<String> first = loader.load(7);
+        loader.load(8);
+        final CompletableFuture<String> second = loader.load(7);
+        loader.load(9);
+
+        assertEquals("7", first.get(5, TimeUnit.SECONDS));
+        assertEquals("7", second.get(5, TimeUnit.SECONDS));
+        assertEquals(asList(asList(7, 8, 9)), new ArrayList<>(batches));
+    }
+
+    @Test
+    public void should_complete_with_null_for_missing_value() throws Exception {
+        final BatchLoader<Integer, String> loader = BatchLoader.of(keys -> new HashMap<>(), 1, Duration.ofHours(1), scheduler);
+
+        assertNull(loader.load(1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_fail_every_load_of_batch_when_bulk_function_throws() throws Exception {
+        final BatchLoader<Integer, String> loader = BatchLoader.of(keys -> {
+            throw new IOException("unavailable");
+        }, 2, Duration.ofHours(1), scheduler);
+
+        final CompletableFuture<String> one = loader.load(1);
+        final CompletableFuture<String> two = loader.load(2);
+
+        for (CompletableFuture<String> future : asList(one, two)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void should_load_every_key_once_when_loading_concurrently() throws Exception {
+        final int threads = 8;
+        final int loadsPerThread = 2_000;
+        final BatchLoader<Integer, String> loader = BatchLoader.of(this::names, 64, Duration.ofMillis(1), scheduler);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<CompletableFuture<List<CompletableFuture<String>>>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; ++t) {
+                final int offset = t * loadsPerThread;
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    final List<CompletableFuture<String>> futures = new ArrayList<>();
+                    for (int i = 0; i < loadsPerThread; ++i) {
+                        futures.add(loader.load(offset + i));
+                    }
+                    return futures;
+                }, pool));
+            }
+            start.countDown();
+            for (int t = 0; t < threads; ++t) {
+                final List<CompletableFuture<String>> futures = results.get(t).get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < loadsPerThread; ++i) {
+                    assertEquals(String.valueOf(t * loadsPerThread + i), futures.get(i).get(10, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int loaded = 0;
+        for (List<Integer> batch : batches) {
+            assertTrue(batch.size() <= 64);
+            loaded += batch.size();
+        }
+        assertEquals(threads * loadsPerThread, loaded);
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_zero_batch_size() {
+        BatchLoader.of(this::names, 0, Duration.ofMillis(1), scheduler);
+    }
+
+    private Map<Integer, String> names(final Collection<Integer> keys) {
+        batches.add(new ArrayList<>(keys));
+        final Map<Integer, String> names = new HashMap<>();
+        for (Integer key : keys) {
+            names.put(key, String.valueOf(key));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.Validate;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+import se.sawano.java.commons.lang.validate.hystrix.HystrixValidate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 0.5, Duration.ofSeconds(10), e -> !(e instanceof IllegalStateException), time::get);
+
+    @Test
+    public void should_stay_closed_until_window_is_full() throws Exception {
+        failTimes(3);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals("ok", breaker.call(() -> "ok"));
+    }
+
+    @Test
+    public void should_open_when_failure_rate_reaches_threshold() throws Exception {
+        breaker.call(() -> "ok");
+        breaker.call(() -> "ok");
+        failTimes(2);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(0.5, breaker.failureRate(), 0);
+        assertRejected();
+    }
+
+    @Test
+    public void should_not_open_below_threshold() throws Exception {
+        for (int i = 0; i < 3; ++i) {
+            breaker.call(() -> "ok");
+        }
+        failTimes(1);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.25, breaker.failureRate(), 0);
+    }
+
+    @Test
+    public void should_slide_window_over_last_calls() throws Exception {
+        failTimes(1);
+        for (int i = 0; i < 4; ++i) {
+            breaker.call(() -> "ok");
+        }
+
+        assertEquals(0, breaker.failureRate(), 0);
+    }
+
+    @Test
+    public void should_close_when_probe_succeeds() throws Exception {
+        failTimes(4);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals("ok", breaker.call(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.failureRate(), 0);
+    }
+
+    @Test
+    public void should_open_again_when_probe_fails() throws Exception {
+        failTimes(4);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        failTimes(1);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertRejected();
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    @Test
+    public void should_permit_single_probe() throws Exception {
+        failTimes(4);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        final CountDownLatch probing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> probe = executor.submit(() -> breaker.call(() -> {
+                probing.countDown();
+                release.await();
+                return "ok";
+            }));
+            probing.await();
+
+            assertRejected();
+            release.countDown();
+            assertEquals("ok", probe.get(5, TimeUnit.SECONDS));
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_not_record_ignored_exceptions() throws Exception {
+        for (int i = 0; i < 4; ++i) {
+            try {
+                breaker.call(() -> {
+                    throw new IllegalStateException("ignored");
+                });
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.failureRate(), 0);
+    }
+
+    @Test
+    public void should_let_next_call_probe_when_probe_throws_ignored_exception() throws Exception {
+        failTimes(4);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        try {
+            breaker.call(() -> {
+                throw new IllegalStateException("ignored");
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals("ok", breaker.call(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void should_not_count_validation_exceptions_as_failures_by_default() throws Exception {
+        final CircuitBreaker defaults = CircuitBreaker.of(2, 0.5, Duration.ofSeconds(10));
+        for (int i = 0; i < 4; ++i) {
+            try {
+                defaults.call(() -> Validate.notNull(null));
+                fail("Expected validation exception");
+            } catch (Exception e) {
+                // expected
+            }
+            try {
+                defaults.call(() -> HystrixValidate.notNull(null));
+                fail("Expected bad request exception");
+            } catch (Exception e) {
+                // expected
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, defaults.state());
+    }
+
+    @Test
+    public void should_close_on_reset() throws Exception {
+        failTimes(4);
+
+        breaker.reset();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals("ok", breaker.call(() -> "ok"));
+    }
+
+    @Test
+    public void should_keep_failure_count_consistent_when_reset_during_calls() throws Exception {
+        final CircuitBreaker concurrent = CircuitBreaker.of(4096, 1.0, Duration.ofSeconds(10));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> callers = new ArrayList<>();
+            for (int t = 0; t < 3; ++t) {
+                callers.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; ++i) {
+                        final int n = i;
+                        try {
+                            concurrent.call(() -> {
+                                if (n % 4 == 0) {
+                                    throw new IOException("failure");
+                                }
+                                return n;
+                            });
+                        } catch (CircuitBreakerOpenException e) {
+                            concurrent.reset();
+                        } catch (Exception e) {
+                            // expected failure
+                        }
+                    }
+                    return null;
+                }));
+            }
+            final Future<?> resets = executor.submit(() -> {
+                while (!callers.stream().allMatch(Future::isDone)) {
+                    concurrent.reset();
+                }
+            });
+            for (Future<?> caller : callers) {
+                caller.get(30, TimeUnit.SECONDS);
+            }
+            resets.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < 4096; ++i) {
+            concurrent.call(() -> "ok");
+        }
+
+        assertEquals(0, concurrent.failureRate(), 0);
+    }
+
+    @Test
+    public void should_decorate_function() throws Exception {
+        assertEquals(Integer.valueOf(3), breaker.<String, Integer>decorate(String::length).apply("abc"));
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_zero_threshold() {
+        CircuitBreaker.of(10, 0, Duration.ofSeconds(1));
+    }
+
+    private void failTimes(final int times) throws Exception {
+        for (int i = 0; i < times; ++i) {
+            try {
+                breaker.call(() -> {
+                    throw new IOException("failure");
+                });
+                fail("Expected IOException");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private void assertRejected() throws Exception {
+        try {
+            breaker.call(() -> "ok");
+            fail("Expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentBloomFilterTest {
+
+    @Test
+    public void should_never_give_false_negatives() {
+        final ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(10_000, 0.01);
+
+        LongStream.range(0, 10_000).parallel().forEach(filter::put);
+
+        assertTrue(LongStream.range(0, 10_000).allMatch(filter::mightContain));
+        assertFalse(filter.put(42));
+    }
+
+    @Test
+    public void should_have_false_positive_rate_close_to_the_desired() {
+        final ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(10_000, 0.01);
+        LongStream.range(0, 10_000).forEach(filter::put);
+
+        final long falsePositives = LongStream.range(10_000, 110_000).filter(filter::mightContain).count();
+
+        assertTrue("False positives: " + falsePositives, falsePositives < 2_000);
+        assertTrue(filter.expectedFpp() < 0.02);
+    }
+
+    @Test
+    public void should_report_size_and_fill_ratio() {
+        final ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(1000, 0.01);
+
+        assertEquals(0, filter.fillRatio(), 0);
+        assertEquals(9600, filter.bitSize());
+        assertEquals(7, filter.hashFunctions());
+        assertEquals(1200, filter.memoryFootprint());
+
+        filter.put(1);
+
+        assertEquals(7.0 / 9600, filter.fillRatio(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_invalid_probability() {
+        ConcurrentBloomFilter.create(1000, 1);
+    }
+}
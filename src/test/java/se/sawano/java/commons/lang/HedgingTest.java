@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @AfterClass
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void should_not_hedge_fast_call() throws Exception {
+        final Hedging hedging = Hedging.of(Duration.ofSeconds(10), 2);
+
+        assertEquals("first", hedging.call(() -> "first", EXECUTOR));
+
+        final HedgingStatistics statistics = hedging.statistics();
+        assertEquals(1, statistics.callCount());
+        assertEquals(0, statistics.hedgeCount());
+        assertEquals(1, statistics.winCount(0));
+    }
+
+    @Test
+    public void should_use_hedge_when_first_attempt_is_slow() throws Exception {
+        final Hedging hedging = Hedging.of(Duration.ofMillis(10), 1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        final String result = hedging.call(() -> {
+            if (attempts.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "slow";
+            }
+            return "hedge";
+        }, EXECUTOR);
+
+        assertEquals("hedge", result);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        final HedgingStatistics statistics = hedging.statistics();
+        assertEquals(1, statistics.hedgedCallCount());
+        assertEquals(1, statistics.hedgeCount());
+        assertEquals(0, statistics.winCount(0));
+        assertEquals(1, statistics.winCount(1));
+        assertEquals(1, statistics.hedgeRate(), 0);
+    }
+
+    @Test
+    public void should_start_hedges_up_to_max() throws Exception {
+        final Hedging hedging = Hedging.of(Duration.ofMillis(10), 2);
+
+        final String result = hedging.call(() -> {
+            final int attempt = attempts.getAndIncrement();
+            if (attempt < 2) {
+                Thread.sleep(10_000);
+            }
+            return "attempt " + attempt;
+        }, EXECUTOR);
+
+        assertEquals("attempt 2", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, hedging.statistics().hedgeCount());
+        assertEquals(1, hedging.statistics().winCount(2));
+    }
+
+    @Test
+    public void should_start_hedge_right_away_when_attempt_fails() throws Exception {
+        final Hedging hedging = Hedging.of(Duration.ofSeconds(10), 1);
+        final long start = System.nanoTime();
+
+        final String result = hedging.call(() -> {
+            if (attempts.getAndIncrement() == 0) {
+                throw new IOException("failed");
+            }
+            return "hedge";
+        }, EXECUTOR);
+
+        assertEquals("hedge", result);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void should_throw_first_exception_when_all_attempts_fail() throws Exception {
+        final Hedging hedging = Hedging.of(Duration.ofMillis(1), 2);
+        try {
+            hedging.call(() -> {
+                throw new IOException("failure " + attempts.incrementAndGet());
+            }, EXECUTOR);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failure 1", e.getMessage());
+            assertEquals(2, e.getSuppressed().length);
+        }
+        assertEquals(3, attempts.get());
+        assertEquals(1, hedging.statistics().failureCount());
+    }
+
+    @Test
+    public void should_adapt_delay_to_observed_latencies() throws Exception {
+        final Hedging hedging = Hedging.adaptive(Duration.ofSeconds(10), 1);
+        for (int i = 0; i < 64; ++i) {
+            hedging.call(() -> "fast", EXECUTOR);
+        }
+
+        assertTrue(hedging.statistics().hedgeDelay().compareTo(Duration.ofSeconds(1)) < 0);
+    }
+
+    @Test
+    public void should_hedge_about_one_call_in_twenty_with_adaptive_delay() throws Exception {
+        final Hedging hedging = Hedging.adaptive(Duration.ofMillis(100), 1);
+        final AtomicInteger latencies = new AtomicInteger();
+        // 90% of the calls take 1 to 2 ms and 10% take 10 to 30 ms, so the 95th percentile is about 20 ms and a hedge usually wins
+        final ThrowableSupplier<String> call = () -> {
+            final int permille = latencies.getAndIncrement() * 377 % 1000;
+            final long micros = permille < 900 ? 1000 + permille : 10_000 + (permille - 900) * 200;
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+            return "done";
+        };
+        final ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            runCalls(callers, hedging, call, 400);
+            final HedgingStatistics warmedUp = hedging.statistics();
+            runCalls(callers, hedging, call, 1600);
+            final HedgingStatistics statistics = hedging.statistics();
+
+            final double hedgeRate = (double) (statistics.hedgedCallCount() - warmedUp.hedgedCallCount()) / (statistics.callCount() - warmedUp.callCount());
+            // Sampling only the winners lets the delay collapse to about 2 ms and hedges more than 12% of the calls
+            assertTrue("Hedge rate " + hedgeRate, hedgeRate > 0.02 && hedgeRate < 0.09);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_make_hedged_call_with_fixed_delay() throws Exception {
+        assertEquals("done", Hedging.call(() -> "done", Duration.ofMillis(10), 1, EXECUTOR));
+    }
+
+    private static void runCalls(final ExecutorService callers, final Hedging hedging, final ThrowableSupplier<String> call, final int calls) throws Exception {
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < calls; ++i) {
+            results.add(callers.submit(() -> hedging.call(call, EXECUTOR)));
+        }
+        for (Future<String> result : results) {
+            assertEquals("done", result.get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_zero_max_hedges() {
+        Hedging.of(Duration.ofMillis(10), 0);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares chains of {@link Optional} operations with the same chains using {@link Nullables}. In the {@code NotInlined} variants each step of the chain is a method that is not inlined, which is
+ * what happens in deep call graphs and defeats escape analysis of the {@link Optional} instances. Run with the GC profiler to see the allocation rate:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) se.sawano.java.commons.lang.NullablesBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NullablesBenchmark {
+
+    @Param({"true", "false"})
+    public boolean present;
+
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        order = new Order(present ? new Customer(new Address("Stockholm")) : null);
+    }
+
+    @Benchmark
+    public String optional() {
+        return optionalChain(order);
+    }
+
+    @Benchmark
+    public String nullables() {
+        return nullablesChain(order);
+    }
+
+    @Benchmark
+    public String optionalNotInlined() {
+        return city(address(customer(Optional.ofNullable(order)))).orElse("unknown");
+    }
+
+    @Benchmark
+    public String nullablesNotInlined() {
+        return Nullables.orElse(city(address(customer(order))), "unknown");
+    }
+
+    private static String optionalChain(final Order order) {
+        return Optional.ofNullable(order).map(o -> o.customer).map(c -> c.address).map(a -> a.city).orElse("unknown");
+    }
+
+    private static String nullablesChain(final Order order) {
+        return Nullables.orElse(Nullables.map(Nullables.map(Nullables.map(order, o -> o.customer), c -> c.address), a -> a.city), "unknown");
+    }
+
+    // Each step is kept out of its caller, so the intermediate values escape as they do in deep call graphs
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static Optional<Customer> customer(final Optional<Order> order) {
+        return order.map(o -> o.customer);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static Optional<Address> address(final Optional<Customer> customer) {
+        return customer.map(c -> c.address);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static Optional<String> city(final Optional<Address> address) {
+        return address.map(a -> a.city);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static Customer customer(final Order order) {
+        return Nullables.map(order, o -> o.customer);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static Address address(final Customer customer) {
+        return Nullables.map(customer, c -> c.address);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static String city(final Address address) {
+        return Nullables.map(address, a -> a.city);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NullablesBenchmark.class.getSimpleName())
+                                       .addProfiler("gc")
+                                       .build()).run();
+    }
+
+    private static final class Order {
+        final Customer customer;
+
+        Order(final Customer customer) {
+            this.customer = customer;
+        }
+    }
+
+    private static final class Customer {
+        final Address address;
+
+        Customer(final Address address) {
+            this.address = address;
+        }
+    }
+
+    private static final class Address {
+        final String city;
+
+        Address(final String city) {
+            this.city = city;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+import se.sawano.java.commons.lang.validate.exception.NullPointerValidationException;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class NullablesTest {
+
+    @Test
+    public void should_map_values() {
+        assertEquals(Integer.valueOf(3), Nullables.map("abc", String::length));
+        assertNull(Nullables.map((String) null, String::length));
+        assertNull(Nullables.map("abc", s -> null));
+    }
+
+    @Test
+    public void should_flat_map_values() {
+        assertEquals(Integer.valueOf(3), Nullables.flatMap("abc", s -> Optional.of(s.length())));
+        assertNull(Nullables.flatMap("abc", s -> Optional.empty()));
+        assertNull(Nullables.flatMap((String) null, s -> Optional.of(s.length())));
+    }
+
+    @Test
+    public void should_get_value_or_other() {
+        assertEquals("a", Nullables.orElse("a", "b"));
+        assertEquals("b", Nullables.orElse(null, "b"));
+        assertEquals("a", Nullables.orElseGet("a", () -> {
+            throw new AssertionError("Should not be called");
+        }));
+        assertEquals("b", Nullables.orElseGet(null, () -> "b"));
+    }
+
+    @Test
+    public void should_get_required_value() {
+        assertEquals("a", Nullables.required("a"));
+        assertEquals("a", Nullables.required("a", "message"));
+        assertEquals("a", Nullables.required("a", "message %d", 1));
+    }
+
+    @Test
+    public void should_fail_with_same_messages_as_optionals() {
+        assertEquals(message(() -> Optionals.required(Optional.empty())), message(() -> Nullables.required(null)));
+        assertEquals("missing", message(() -> Nullables.required(null, "missing")));
+        assertEquals("missing 1", message(() -> Nullables.required(null, "missing %d", 1)));
+    }
+
+    @Test(expected = NullPointerValidationException.class)
+    public void should_not_accept_null_mapper() {
+        Nullables.map("a", null);
+    }
+
+    private static String message(final Runnable subject) {
+        try {
+            subject.run();
+            fail("Expected IllegalArgumentValidationException");
+            return null;
+        } catch (IllegalArgumentValidationException e) {
+            return e.getMessage();
+        }
+    }
+}
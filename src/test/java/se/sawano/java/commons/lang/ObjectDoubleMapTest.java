@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectDoubleMapTest {
+
+    @Test
+    public void should_put_and_get_values() {
+        final ObjectDoubleMap<String> map = new ObjectDoubleMap<>();
+
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("a", 3);
+        map.put(null, 4);
+
+        assertEquals(3, map.size());
+        assertEquals(3, map.get("a"), 0);
+        assertEquals(2, map.get("b"), 0);
+        assertEquals(4, map.get(null), 0);
+        assertEquals(0, map.get("c"), 0);
+        assertEquals(-1, map.getOrDefault("c", -1), 0);
+        assertTrue(map.containsKey(null));
+        assertFalse(map.containsKey("c"));
+    }
+
+    @Test
+    public void should_grow() {
+        final ObjectDoubleMap<Integer> map = new ObjectDoubleMap<>(0);
+        final Map<Integer, Double> expected = new HashMap<>();
+
+        for (int i = 0; i < 10_000; ++i) {
+            map.addTo(i % 3000, i);
+            expected.merge(i % 3000, (double) i, Double::sum);
+        }
+
+        assertEquals(3000, map.size());
+        assertEquals(expected, map.toMap());
+    }
+
+    @Test
+    public void should_merge_values() {
+        final ObjectDoubleMap<String> map = new ObjectDoubleMap<>();
+
+        assertEquals(5, map.merge("a", 5, Math::min), 0);
+        assertEquals(3, map.merge("a", 3, Math::min), 0);
+        assertEquals(3, map.merge("a", 7, Math::min), 0);
+        assertEquals(10, map.addTo("a", 7), 0);
+    }
+
+    @Test
+    public void should_merge_maps() {
+        final ObjectDoubleMap<String> left = new ObjectDoubleMap<>();
+        left.put("a", 1);
+        left.put("b", 2);
+        final ObjectDoubleMap<String> right = new ObjectDoubleMap<>();
+        right.put("b", 3);
+        right.put(null, 4);
+
+        left.mergeAll(right, Double::sum);
+
+        assertEquals(3, left.size());
+        assertEquals(5, left.get("b"), 0);
+        assertEquals(4, left.get(null), 0);
+    }
+
+    @Test
+    public void should_be_equal_to_map_with_same_entries() {
+        final ObjectDoubleMap<String> first = new ObjectDoubleMap<>();
+        final ObjectDoubleMap<String> second = new ObjectDoubleMap<>(100);
+        first.put("a", 1);
+        first.put("b", 2);
+        second.put("b", 2);
+        second.put("a", 1);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        second.put("a", 3);
+        assertNotEquals(first, second);
+        assertEquals("{a=3.0}", singleton("a", 3).toString());
+    }
+
+    @Test
+    public void should_compare_values_like_double_equals() {
+        final ObjectDoubleMap<String> nan = singleton("a", Double.NaN);
+
+        assertEquals(nan, nan);
+        assertEquals(nan, singleton("a", Double.NaN));
+        assertEquals(nan.hashCode(), singleton("a", Double.NaN).hashCode());
+        assertNotEquals(singleton("a", 0.0), singleton("a", -0.0));
+    }
+
+    private static ObjectDoubleMap<String> singleton(final String key, final double value) {
+        final ObjectDoubleMap<String> map = new ObjectDoubleMap<>();
+        map.put(key, value);
+        return map;
+    }
+}
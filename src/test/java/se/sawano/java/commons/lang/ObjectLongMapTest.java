@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectLongMapTest {
+
+    @Test
+    public void should_put_and_get_values() {
+        final ObjectLongMap<String> map = new ObjectLongMap<>();
+
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("a", 3);
+        map.put(null, 4);
+
+        assertEquals(3, map.size());
+        assertEquals(3, map.get("a"));
+        assertEquals(2, map.get("b"));
+        assertEquals(4, map.get(null));
+        assertEquals(0, map.get("c"));
+        assertEquals(-1, map.getOrDefault("c", -1));
+        assertTrue(map.containsKey(null));
+        assertFalse(map.containsKey("c"));
+    }
+
+    @Test
+    public void should_grow() {
+        final ObjectLongMap<Integer> map = new ObjectLongMap<>(0);
+        final Map<Integer, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 10_000; ++i) {
+            map.addTo(i % 3000, i);
+            expected.merge(i % 3000, (long) i, Long::sum);
+        }
+
+        assertEquals(3000, map.size());
+        assertEquals(expected, map.toMap());
+    }
+
+    @Test
+    public void should_merge_values() {
+        final ObjectLongMap<String> map = new ObjectLongMap<>();
+
+        assertEquals(5, map.merge("a", 5, Math::min));
+        assertEquals(3, map.merge("a", 3, Math::min));
+        assertEquals(3, map.merge("a", 7, Math::min));
+        assertEquals(10, map.addTo("a", 7));
+    }
+
+    @Test
+    public void should_merge_maps() {
+        final ObjectLongMap<String> left = new ObjectLongMap<>();
+        left.put("a", 1);
+        left.put("b", 2);
+        final ObjectLongMap<String> right = new ObjectLongMap<>();
+        right.put("b", 3);
+        right.put(null, 4);
+
+        left.mergeAll(right, Long::sum);
+
+        assertEquals(3, left.size());
+        assertEquals(5, left.get("b"));
+        assertEquals(4, left.get(null));
+    }
+
+    @Test
+    public void should_be_equal_to_map_with_same_entries() {
+        final ObjectLongMap<String> first = new ObjectLongMap<>();
+        final ObjectLongMap<String> second = new ObjectLongMap<>(100);
+        first.put("a", 1);
+        first.put("b", 2);
+        second.put("b", 2);
+        second.put("a", 1);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        second.put("a", 3);
+        assertNotEquals(first, second);
+        assertEquals("{a=3}", singleton("a", 3).toString());
+    }
+
+    private static ObjectLongMap<String> singleton(final String key, final long value) {
+        final ObjectLongMap<String> map = new ObjectLongMap<>();
+        map.put(key, value);
+        return map;
+    }
+}
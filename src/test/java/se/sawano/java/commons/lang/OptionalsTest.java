@@ -20,11 +20,29 @@ import org.junit.Test;
 import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
 import se.sawano.java.commons.lang.validate.exception.NullPointerValidationException;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.lang.Integer.valueOf;
+import static java.util.Arrays.asList;
 import static java.util.Optional.*;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class OptionalsTest {
@@ -38,7 +56,7 @@ public class OptionalsTest {
 
     @Test
     public void should_not_accept_null_when_creating_stream() {
-        testForException(() -> Optionals.stream(null), NullPointerValidationException.class);
+        testForException(() -> Optionals.stream((Optional<?>) null), NullPointerValidationException.class);
     }
 
     @Test
@@ -50,16 +68,16 @@ public class OptionalsTest {
 
     @Test
     public void should_not_accept_null_when_getting_required() {
-        testForException(() -> Optionals.required(null), NullPointerValidationException.class);
+        testForException(() -> Optionals.required((Optional<?>) null), NullPointerValidationException.class);
     }
 
     @Test
     @SuppressWarnings("NullArgumentToVariableArgMethod")
     public void should_not_accept_null_when_getting_required_with_message() {
-        testForException(() -> Optionals.required(null, "message %d", 1), NullPointerValidationException.class);
+        testForException(() -> Optionals.required((Optional<?>) null, "message %d", 1), NullPointerValidationException.class);
         testForException(() -> Optionals.required(empty(), null, 1), NullPointerValidationException.class);
         testForException(() -> Optionals.required(empty(), "message %d", null), NullPointerValidationException.class);
-        testForException(() -> Optionals.required(null, "message"), NullPointerValidationException.class);
+        testForException(() -> Optionals.required((Optional<?>) null, "message"), NullPointerValidationException.class);
         testForException(() -> Optionals.required(empty(), null), NullPointerValidationException.class);
     }
 
@@ -70,6 +88,214 @@ public class OptionalsTest {
         testForException(() -> Optionals.required(empty(), "message %d", 1), IllegalArgumentValidationException.class);
     }
 
+    @Test
+    public void should_get_primitive_values() {
+        assertEquals(1, Optionals.required(OptionalInt.of(1)));
+        assertEquals(1, Optionals.required(OptionalInt.of(1), "message"));
+        assertEquals(1, Optionals.required(OptionalInt.of(1), "message %d", 1));
+        assertEquals(1, Optionals.required(OptionalInt.of(1), () -> "message"));
+        assertEquals(2L, Optionals.required(OptionalLong.of(2)));
+        assertEquals(2L, Optionals.required(OptionalLong.of(2), "message"));
+        assertEquals(2L, Optionals.required(OptionalLong.of(2), "message %d", 1));
+        assertEquals(2L, Optionals.required(OptionalLong.of(2), () -> "message"));
+        assertEquals(3.0, Optionals.required(OptionalDouble.of(3)), 0);
+        assertEquals(3.0, Optionals.required(OptionalDouble.of(3), "message"), 0);
+        assertEquals(3.0, Optionals.required(OptionalDouble.of(3), "message %d", 1), 0);
+        assertEquals(3.0, Optionals.required(OptionalDouble.of(3), () -> "message"), 0);
+    }
+
+    @Test
+    public void should_not_accept_empty_primitive_optionals() {
+        testForException(() -> Optionals.required(OptionalInt.empty()), IllegalArgumentValidationException.class);
+        testForException(() -> Optionals.required(OptionalLong.empty(), "message"), IllegalArgumentValidationException.class);
+        testForException(() -> Optionals.required(OptionalDouble.empty(), "message %d", 1), IllegalArgumentValidationException.class);
+        testForException(() -> Optionals.required(OptionalInt.empty(), () -> "message"), IllegalArgumentValidationException.class);
+        testForException(() -> Optionals.required((OptionalLong) null), NullPointerValidationException.class);
+        testForException(() -> Optionals.required(OptionalDouble.of(1), (Supplier<String>) null), NullPointerValidationException.class);
+    }
+
+    @Test
+    public void should_use_message_of_supplier_only_when_value_is_missing() {
+        final AtomicBoolean called = new AtomicBoolean();
+        Optionals.required(OptionalInt.of(1), () -> {
+            called.set(true);
+            return "message";
+        });
+        assertEquals(false, called.get());
+
+        try {
+            Optionals.required(OptionalLong.empty(), () -> "Value is missing");
+            fail("Expected IllegalArgumentValidationException");
+        } catch (IllegalArgumentValidationException e) {
+            assertEquals("Value is missing", e.getMessage());
+        }
+    }
+
+    @Test
+    public void should_create_primitive_streams() {
+        assertArrayEquals(new int[]{1}, Optionals.stream(OptionalInt.of(1)).toArray());
+        assertEquals(0, Optionals.stream(OptionalInt.empty()).count());
+        assertArrayEquals(new long[]{2}, Optionals.stream(OptionalLong.of(2)).toArray());
+        assertEquals(0, Optionals.stream(OptionalLong.empty()).count());
+        assertArrayEquals(new double[]{3}, Optionals.stream(OptionalDouble.of(3)).toArray(), 0);
+        assertEquals(0, Optionals.stream(OptionalDouble.empty()).count());
+    }
+
+    @Test
+    public void should_flatten_stream() {
+        final List<Integer> result = Optionals.flatten(Stream.of(of(1), empty(), of(2), empty(), empty(), of(3))).collect(toList());
+
+        assertEquals(asList(1, 2, 3), result);
+        assertEquals(Optional.of(2), Optionals.flatten(Stream.of(empty(), of(2), of(3))).findFirst());
+        assertEquals(0, Optionals.flatten(Stream.of(empty(), empty())).count());
+    }
+
+    @Test
+    public void should_flatten_parallel_stream() {
+        final Stream<Optional<Integer>> optionals = IntStream.range(0, 100_000).parallel().mapToObj(i -> i % 3 == 0 ? of(i) : empty());
+
+        final Stream<Integer> flattened = Optionals.flatten(optionals);
+
+        assertTrue(flattened.isParallel());
+        assertEquals(IntStream.range(0, 100_000).filter(i -> i % 3 == 0).boxed().collect(toList()), flattened.collect(toList()));
+    }
+
+    @Test
+    public void should_close_flattened_stream() {
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Optionals.flatten(Stream.of(of(1)).onClose(() -> closed.set(true))).close();
+
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void should_not_accept_null_when_flattening() {
+        testForException(() -> Optionals.flatten(null), NullPointerValidationException.class);
+    }
+
+    @Test
+    public void should_get_first_present_value() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Supplier<Optional<String>> none = () -> {
+            calls.incrementAndGet();
+            return empty();
+        };
+        final Supplier<Optional<String>> some = () -> {
+            calls.incrementAndGet();
+            return of("value");
+        };
+        final Supplier<Optional<String>> unexpected = () -> {
+            throw new AssertionError("Should not be evaluated");
+        };
+
+        assertEquals(of("value"), Optionals.firstPresent(some, unexpected));
+        assertEquals(of("value"), Optionals.firstPresent(none, some));
+        assertEquals(of("value"), Optionals.firstPresent(none, some, unexpected));
+        assertEquals(of("value"), Optionals.firstPresent(none, none, none, some, unexpected));
+        assertEquals(empty(), Optionals.firstPresent(none, none));
+        assertEquals(empty(), Optionals.firstPresent(none, none, none));
+        assertEquals(empty(), Optionals.firstPresent(none, none, none, none));
+        assertEquals(18, calls.get());
+    }
+
+    @Test
+    public void should_get_first_present_value_of_throwing_steps() throws Exception {
+        final ThrowableSupplier<Optional<String>> none = Optional::empty;
+        final ThrowableSupplier<Optional<String>> some = () -> of("value");
+        final ThrowableSupplier<Optional<String>> failing = () -> {
+            throw new IOException("failed");
+        };
+
+        assertEquals(of("value"), Optionals.firstPresentChecked(some, failing));
+        assertEquals(of("value"), Optionals.firstPresentChecked(none, none, some));
+        assertEquals(of("value"), Optionals.firstPresentChecked(none, none, none, some, failing));
+        assertEquals(empty(), Optionals.firstPresentChecked(none, none, none, none));
+        try {
+            Optionals.firstPresentChecked(none, failing);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void should_not_accept_null_steps() {
+        testForException(() -> Optionals.firstPresent(Optional::empty, null), NullPointerValidationException.class);
+        testForException(() -> Optionals.firstPresent(() -> empty(), () -> null), NullPointerValidationException.class);
+        testForException(() -> Optionals.firstPresent(Optional::empty, Optional::empty, Optional::empty, null), IllegalArgumentValidationException.class);
+    }
+
+    @Test
+    public void should_return_first_present_value_of_race() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final CountDownLatch slowInterrupted = new CountDownLatch(1);
+            final ThrowableSupplier<Optional<String>> slow = () -> {
+                try {
+                    Thread.sleep(10_000);
+                    return of("slow");
+                } catch (InterruptedException e) {
+                    slowInterrupted.countDown();
+                    throw e;
+                }
+            };
+            final ThrowableSupplier<Optional<String>> fast = () -> {
+                Thread.sleep(20);
+                return of("fast");
+            };
+            final ThrowableSupplier<Optional<String>> none = Optional::empty;
+
+            assertEquals(of("fast"), Optionals.racePresent(executor, none, slow, fast));
+            assertTrue(slowInterrupted.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_return_empty_when_all_racing_lookups_are_empty() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final ThrowableSupplier<Optional<String>> none = () -> {
+            calls.incrementAndGet();
+            Thread.sleep(10);
+            return empty();
+        };
+
+        assertEquals(empty(), Optionals.racePresent(none, none, none));
+        assertEquals(3, calls.get());
+        assertEquals(empty(), Optionals.<String>racePresent());
+    }
+
+    @Test
+    public void should_ignore_failures_when_a_racing_lookup_is_present() throws Exception {
+        final ThrowableSupplier<Optional<String>> failing = () -> {
+            throw new IOException("failed");
+        };
+        final ThrowableSupplier<Optional<String>> some = () -> {
+            Thread.sleep(20);
+            return of("value");
+        };
+
+        assertEquals(of("value"), Optionals.racePresent(failing, some));
+    }
+
+    @Test
+    public void should_throw_failures_when_no_racing_lookup_is_present() throws Exception {
+        final ThrowableSupplier<Optional<String>> failing = () -> {
+            throw new IOException("failed");
+        };
+        final ThrowableSupplier<Optional<String>> none = Optional::empty;
+
+        try {
+            Optionals.racePresent(failing, none, failing);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
     private void testForException(final Supplier subject, final Class<? extends Exception> exceptionClass) {
         try {
             subject.get();
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryTest {
+
+    private static final RetryPolicy FAST = RetryPolicy.maxAttempts(5).withBackoff(Duration.ofMillis(1), Duration.ofMillis(5));
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    public void should_retry_until_success() throws Exception {
+        assertEquals("done", Retry.of(FAST).call(failingTimes(3)));
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    public void should_give_up_after_max_attempts() throws Exception {
+        try {
+            Retry.of(FAST).call(failingTimes(10));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failure 5", e.getMessage());
+            assertEquals(4, e.getSuppressed().length);
+            assertEquals("failure 1", e.getSuppressed()[0].getMessage());
+        }
+        assertEquals(5, attempts.get());
+    }
+
+    @Test
+    public void should_only_retry_matching_exceptions() throws Exception {
+        final Retry retry = Retry.of(FAST.withRetryOn(e -> e instanceof IllegalStateException));
+
+        try {
+            retry.call(failingTimes(3));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failure 1", e.getMessage());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void should_not_retry_validation_exceptions_by_default() throws Exception {
+        try {
+            Retry.of(FAST).call(() -> {
+                attempts.incrementAndGet();
+                throw new IllegalArgumentValidationException("invalid");
+            });
+            fail("Expected IllegalArgumentValidationException");
+        } catch (IllegalArgumentValidationException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void should_not_retry_validation_exceptions_with_custom_predicate() throws Exception {
+        try {
+            Retry.of(FAST.withRetryOn(e -> e instanceof RuntimeException)).call(() -> {
+                attempts.incrementAndGet();
+                throw new IllegalArgumentValidationException("invalid");
+            });
+            fail("Expected IllegalArgumentValidationException");
+        } catch (IllegalArgumentValidationException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void should_stop_when_time_budget_is_spent() throws Exception {
+        final Retry retry = Retry.of(RetryPolicy.maxAttempts(1000)
+                                                .withBackoff(Duration.ofMillis(20), Duration.ofMillis(20))
+                                                .withTimeBudget(Duration.ofMillis(100)));
+
+        try {
+            retry.call(failingTimes(1000));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertTrue("attempts: " + attempts.get(), attempts.get() >= 2 && attempts.get() <= 6);
+        }
+    }
+
+    @Test
+    public void should_retry_function() throws Exception {
+        final Retry retry = Retry.of(FAST);
+        final ThrowableSupplier<String> flaky = failingTimes(1);
+
+        assertEquals("done!", retry.apply(s -> flaky.get() + s, "!"));
+        assertEquals(Integer.valueOf(2), retry.decorate((String s) -> s.length()).apply("ab"));
+    }
+
+    @Test
+    public void should_use_decorrelated_jitter() {
+        final RetryPolicy policy = RetryPolicy.maxAttempts(10).withBackoff(Duration.ofNanos(100), Duration.ofNanos(10_000));
+
+        long previous = 0;
+        for (int i = 0; i < 1000; ++i) {
+            final long delay = policy.nextDelayNanos(previous);
+            assertTrue("delay " + delay, delay >= 100 && delay <= Math.min(10_000, Math.max(previous, 100) * 3));
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void should_retry_asynchronously() throws Exception {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final CompletableFuture<String> success = Retry.of(FAST).callAsync(failingTimes(2), scheduler);
+            assertEquals("done", success.get(5, TimeUnit.SECONDS));
+
+            final CompletableFuture<String> failure = Retry.of(FAST).callAsync(failingTimes(100), scheduler, Runnable::run);
+            try {
+                failure.get(5, TimeUnit.SECONDS);
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertEquals(IOException.class, e.getCause().getClass());
+                assertEquals(4, e.getCause().getSuppressed().length);
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_max_delay_less_than_base_delay() {
+        RetryPolicy.maxAttempts(3).withBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1));
+    }
+
+    private ThrowableSupplier<String> failingTimes(final int failures) {
+        return () -> {
+            final int attempt = attempts.incrementAndGet();
+            if (attempt <= failures) {
+                throw new IOException("failure " + attempt);
+            }
+            return "done";
+        };
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpillableLongSetTest {
+
+    @Test
+    public void should_add_values_on_heap() {
+        final SpillableLongSet set = new SpillableLongSet(1000);
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(-1));
+        assertFalse(set.add(-1));
+        for (long i = 1; i <= 500; ++i) {
+            assertTrue(set.add(i));
+        }
+
+        assertEquals(502, set.size());
+        assertFalse(set.isOffHeap());
+    }
+
+    @Test
+    public void should_move_values_off_heap_when_threshold_is_passed() {
+        final SpillableLongSet set = new SpillableLongSet(100);
+
+        for (long i = 0; i < 10_000; ++i) {
+            assertTrue(set.add(i * 31));
+        }
+        for (long i = 0; i < 10_000; ++i) {
+            assertFalse(set.add(i * 31));
+        }
+
+        assertEquals(10_000, set.size());
+        assertTrue(set.isOffHeap());
+    }
+
+    @Test
+    public void should_add_each_value_once_from_concurrent_threads() throws Exception {
+        final SpillableLongSet set = new SpillableLongSet(10_000);
+        final AtomicInteger added = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                futures.add(executor.submit(() -> {
+                    for (long i = 0; i < 100_000; ++i) {
+                        if (set.add(i * 31)) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(100_000, added.get());
+        assertEquals(100_000, set.size());
+        assertTrue(set.isOffHeap());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StageMetricsTest {
+
+    @Test
+    public void should_register_stages_by_name() {
+        final StageMetrics metrics = StageMetrics.of("registered");
+
+        assertSame(metrics, StageMetrics.of("registered"));
+        assertSame(metrics, StageMetrics.stages().get("registered"));
+        assertEquals("registered", metrics.name());
+    }
+
+    @Test
+    public void should_record_latency_histogram() {
+        final StageMetrics metrics = StageMetrics.of("histogram");
+        metrics.reset();
+
+        for (int i = 1; i <= 100; ++i) {
+            metrics.sample(i * 10);
+        }
+
+        assertEquals(100, metrics.sampleCount());
+        assertEquals(505.0, metrics.meanNanos(), 0.001);
+        assertEquals(1000, metrics.maxNanos());
+        assertEquals(1000, metrics.percentileNanos(100));
+        final long median = metrics.percentileNanos(50);
+        assertTrue("median " + median, median >= 500 && median < 1000);
+        assertEquals(15, metrics.percentileNanos(0));
+    }
+
+    @Test
+    public void should_reset_metrics() {
+        final StageMetrics metrics = StageMetrics.of("reset");
+        metrics.add(10);
+        metrics.addThread(10);
+        metrics.sample(100);
+
+        metrics.reset();
+
+        assertEquals(0, metrics.count());
+        assertEquals(0, metrics.sampleCount());
+        assertEquals(0, metrics.percentileNanos(99));
+        assertTrue(metrics.threadDistribution().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_blank_stage_name() {
+        StageMetrics.of(" ");
+    }
+}
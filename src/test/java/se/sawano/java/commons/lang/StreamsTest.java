@@ -19,17 +19,96 @@ package se.sawano.java.commons.lang;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
 import se.sawano.java.commons.lang.validate.exception.IllegalStateValidationException;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.summingLong;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static se.sawano.java.commons.lang.Streams.approximatelyDistinct;
+import static se.sawano.java.commons.lang.Streams.approximatelyDistinctByHash;
+import static se.sawano.java.commons.lang.Streams.atMostOne;
+import static se.sawano.java.commons.lang.Streams.batch;
+import static se.sawano.java.commons.lang.Streams.countingBy;
+import static se.sawano.java.commons.lang.Streams.countingByConcurrent;
+import static se.sawano.java.commons.lang.Streams.distinctBy;
+import static se.sawano.java.commons.lang.Streams.distinctByHash;
+import static se.sawano.java.commons.lang.Streams.filterChecked;
+import static se.sawano.java.commons.lang.Streams.forEachBatch;
+import static se.sawano.java.commons.lang.Streams.forEachChecked;
+import static se.sawano.java.commons.lang.Streams.forEachIn;
+import static se.sawano.java.commons.lang.Streams.instrument;
+import static se.sawano.java.commons.lang.Streams.lines;
+import static se.sawano.java.commons.lang.Streams.mapAsync;
+import static se.sawano.java.commons.lang.Streams.mapAsyncUnordered;
+import static se.sawano.java.commons.lang.Streams.mapChecked;
+import static se.sawano.java.commons.lang.Streams.maxDoubleBy;
+import static se.sawano.java.commons.lang.Streams.mergeSorted;
+import static se.sawano.java.commons.lang.Streams.maxLongBy;
+import static se.sawano.java.commons.lang.Streams.minDoubleBy;
+import static se.sawano.java.commons.lang.Streams.minLongBy;
+import static se.sawano.java.commons.lang.Streams.onlyOne;
+import static se.sawano.java.commons.lang.Streams.parallelIn;
+import static se.sawano.java.commons.lang.Streams.summingDoubleBy;
+import static se.sawano.java.commons.lang.Streams.summingDoubleByConcurrent;
+import static se.sawano.java.commons.lang.Streams.summingLongBy;
+import static se.sawano.java.commons.lang.Streams.summingLongByConcurrent;
+import static se.sawano.java.commons.lang.Streams.sliding;
 import static se.sawano.java.commons.lang.Streams.toOnlyOne;
+import static se.sawano.java.commons.lang.Streams.toOnlyOneDouble;
+import static se.sawano.java.commons.lang.Streams.toOnlyOneInt;
+import static se.sawano.java.commons.lang.Streams.toOnlyOneLong;
+import static se.sawano.java.commons.lang.Streams.tumbling;
+import static se.sawano.java.commons.lang.validate.Validate.matchesPattern;
 
 public class StreamsTest {
 
     @Rule
     public final ExpectedException expectation = ExpectedException.none();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
 
     @Test
     public void should_fail_if_more_than_one_element_exists_in_stream() {
@@ -65,4 +144,782 @@ public class StreamsTest {
         assertEquals("A", Stream.of("A").reduce(toOnlyOne("Only one!")).get());
         assertEquals("A", Stream.of("A").reduce(toOnlyOne("Only %s!", "one")).get());
     }
+
+    @Test
+    public void should_return_only_one() {
+        assertEquals("A", onlyOne(Stream.of("A")));
+        assertEquals("A", onlyOne(Stream.of("A"), "Only one!"));
+        assertEquals("A", onlyOne(Stream.of("A"), "Only %s!", "one"));
+        assertEquals("A", onlyOne(Stream.of("A", "B", "C").parallel().filter("A"::equals)));
+        assertEquals(1, onlyOne(IntStream.of(1)));
+        assertEquals(1L, onlyOne(LongStream.of(1L)));
+    }
+
+    @Test
+    public void should_fail_only_one_if_stream_is_empty() {
+        expectation.expect(IllegalStateValidationException.class);
+        expectation.expectMessage("No value present");
+
+        onlyOne(Stream.empty());
+    }
+
+    @Test
+    public void should_fail_only_one_if_more_than_one_element_exists_in_stream() {
+        expectation.expect(IllegalStateValidationException.class);
+        expectation.expectMessage("Only one!");
+
+        onlyOne(IntStream.of(1, 2), "Only %s!", "one");
+    }
+
+    @Test
+    public void should_return_at_most_one() {
+        assertEquals(Optional.of("A"), atMostOne(Stream.of("A")));
+        assertEquals(Optional.empty(), atMostOne(Stream.empty(), "Only one!"));
+        assertEquals(OptionalInt.of(1), atMostOne(IntStream.of(1)));
+        assertEquals(OptionalInt.empty(), atMostOne(IntStream.empty().parallel()));
+        assertEquals(OptionalLong.of(1L), atMostOne(LongStream.range(0, 1000).parallel().filter(l -> l == 1)));
+        assertEquals(OptionalLong.empty(), atMostOne(LongStream.empty(), "Only %s!", "one"));
+    }
+
+    @Test
+    public void should_fail_at_most_one_if_more_than_one_element_exists_in_stream() {
+        expectation.expect(IllegalStateValidationException.class);
+        expectation.expectMessage("Duplicates not allowed");
+
+        atMostOne(LongStream.range(0, 1000).parallel());
+    }
+
+    @Test
+    public void should_stop_consuming_stream_when_duplicate_is_found() {
+        final AtomicInteger consumed = new AtomicInteger();
+        try {
+            atMostOne(Stream.iterate(0, i -> i + 1).peek(i -> consumed.incrementAndGet()));
+            fail("Expected " + IllegalStateValidationException.class.getSimpleName());
+        } catch (IllegalStateValidationException e) {
+            assertEquals(2, consumed.get());
+        }
+    }
+
+    @Test
+    public void should_cancel_remaining_splits_when_duplicate_is_found_in_parallel_stream() {
+        final AtomicInteger consumed = new AtomicInteger();
+        try {
+            onlyOne(IntStream.range(0, 10_000_000).parallel().peek(i -> consumed.incrementAndGet()));
+            fail("Expected " + IllegalStateValidationException.class.getSimpleName());
+        } catch (IllegalStateValidationException e) {
+            assertTrue(consumed.get() < 10_000_000);
+        }
+    }
+
+    @Test
+    public void should_batch_stream() {
+        assertEquals(asList(asList(1, 2), asList(3, 4), asList(5)), batch(Stream.of(1, 2, 3, 4, 5), 2).collect(toList()));
+        assertEquals(asList(asList(1, 2, 3)), batch(Stream.of(1, 2, 3), 3).collect(toList()));
+        assertEquals(0, batch(Stream.empty(), 3).count());
+    }
+
+    @Test
+    public void should_batch_parallel_stream_on_batch_boundaries() {
+        final List<Integer> expected = IntStream.range(0, 100_003).boxed().collect(toList());
+
+        final List<List<Integer>> sized = batch(expected.parallelStream(), 7).collect(toList());
+        final List<List<Integer>> unsized = batch(expected.parallelStream().filter(i -> true), 7).collect(toList());
+
+        for (final List<List<Integer>> batches : asList(sized, unsized)) {
+            assertEquals(14_287, batches.size());
+            assertTrue(batches.subList(0, batches.size() - 1).stream().allMatch(b -> b.size() == 7));
+            assertEquals(expected, batches.stream().flatMap(List::stream).collect(toList()));
+        }
+    }
+
+    @Test
+    public void should_keep_sized_characteristics_when_batching() {
+        final Spliterator<List<Integer>> spliterator = batch(new ArrayList<>(asList(1, 2, 3, 4, 5)).stream(), 2).spliterator();
+
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        assertEquals(3, spliterator.getExactSizeIfKnown());
+        final Spliterator<List<Integer>> prefix = spliterator.trySplit();
+        assertEquals(prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown(), 3);
+    }
+
+    @Test
+    public void should_not_accept_non_positive_batch_size() {
+        expectation.expect(IllegalArgumentValidationException.class);
+
+        batch(Stream.of(1), 0);
+    }
+
+    @Test
+    public void should_reuse_batch_for_sequential_stream() {
+        final List<List<Integer>> seen = new ArrayList<>();
+        final List<Integer> flattened = new ArrayList<>();
+
+        forEachBatch(Stream.of(1, 2, 3, 4, 5), 2, b -> {
+            seen.add(b);
+            flattened.addAll(b);
+        });
+
+        assertEquals(asList(1, 2, 3, 4, 5), flattened);
+        assertEquals(3, seen.size());
+        assertSame(seen.get(0), seen.get(2));
+    }
+
+    @Test
+    public void should_perform_action_for_each_batch_of_parallel_stream() {
+        final AtomicInteger sum = new AtomicInteger();
+
+        forEachBatch(IntStream.rangeClosed(1, 1000).boxed().parallel(), 10, b -> sum.addAndGet(b.stream().mapToInt(i -> i).sum()));
+
+        assertEquals(500_500, sum.get());
+    }
+
+    @Test
+    public void should_create_sliding_windows() {
+        assertEquals(asList(asList(1, 2, 3), asList(2, 3, 4), asList(3, 4, 5)), copies(sliding(Stream.of(1, 2, 3, 4, 5), 3, 1)));
+        assertEquals(asList(asList(1, 2), asList(4, 5)), copies(sliding(Stream.of(1, 2, 3, 4, 5, 6), 2, 3)));
+        assertEquals(emptyList(), copies(sliding(Stream.of(1, 2), 3, 1)));
+    }
+
+    @Test
+    public void should_create_tumbling_windows() {
+        assertEquals(asList(asList(1, 2), asList(3, 4)), copies(tumbling(Stream.of(1, 2, 3, 4, 5), 2)));
+    }
+
+    @Test
+    public void should_reuse_window_view() {
+        final List<List<Integer>> windows = sliding(IntStream.range(0, 100).boxed(), 10, 1).collect(toList());
+
+        assertEquals(91, windows.size());
+        assertSame(windows.get(0), windows.get(90));
+    }
+
+    @Test
+    public void should_not_allow_windows_to_be_modified() {
+        expectation.expect(UnsupportedOperationException.class);
+
+        sliding(Stream.of(1, 2), 2, 1).forEach(w -> w.set(0, 3));
+    }
+
+    @Test
+    public void should_create_event_time_windows() {
+        final Stream<Long> timestamps = Stream.of(1L, 2L, 12L, 13L, 14L, 35L);
+
+        assertEquals(asList(asList(1L, 2L), asList(12L, 13L, 14L), asList(35L)), copies(tumbling(timestamps, t -> t, 10)));
+    }
+
+    @Test
+    public void should_create_sliding_event_time_windows() {
+        final Stream<Long> timestamps = Stream.of(1L, 6L, 12L, 31L);
+
+        assertEquals(asList(asList(1L, 6L), asList(6L, 12L), asList(12L), asList(31L), asList(31L)), copies(sliding(timestamps, t -> t, 10, 5)));
+    }
+
+    @Test
+    public void should_not_accept_decreasing_timestamps() {
+        expectation.expect(IllegalStateValidationException.class);
+
+        tumbling(Stream.of(2L, 1L), t -> t, 10).count();
+    }
+
+    private static <T> List<List<T>> copies(final Stream<List<T>> windows) {
+        return windows.map(ArrayList::new).collect(toList());
+    }
+
+    @Test
+    public void should_run_parallel_stream_in_given_pool() {
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            final Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+
+            final int sum = parallelIn(pool, IntStream.range(0, 10_000).boxed(), s -> s.peek(i -> pools.add(((ForkJoinWorkerThread) Thread.currentThread()).getPool()))
+                                                                                       .mapToInt(i -> i)
+                                                                                       .sum());
+
+            assertEquals(49_995_000, sum);
+            assertEquals(1, pools.size());
+            assertSame(pool, pools.iterator().next());
+            assertEquals(3, PoolStatistics.of(pool).parallelism());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void should_propagate_exception_from_given_pool() {
+        expectation.expect(IllegalStateValidationException.class);
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            parallelIn(pool, Stream.of(1, 2), Streams::onlyOne);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void should_perform_action_for_each_element_in_executor() {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final AtomicInteger sum = new AtomicInteger();
+            final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+            forEachIn(executor, 8, IntStream.rangeClosed(1, 1000).boxed(), i -> {
+                threads.add(Thread.currentThread());
+                sum.addAndGet(i);
+            });
+
+            assertEquals(500_500, sum.get());
+            assertTrue(!threads.contains(Thread.currentThread()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void should_stop_and_propagate_first_exception_from_executor() {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AtomicInteger consumed = new AtomicInteger();
+        try {
+            forEachIn(executor, 2, IntStream.range(0, 1_000_000).boxed(), i -> {
+                consumed.incrementAndGet();
+                throw new IllegalArgumentException("fail");
+            });
+            fail("Expected " + IllegalArgumentException.class.getSimpleName());
+        } catch (IllegalArgumentException e) {
+            assertTrue(consumed.get() <= 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void should_map_and_filter_with_checked_functions() {
+        assertEquals(asList("1", "3"), Stream.of(1, 2, 3)
+                                             .filter(filterChecked(StreamsTest::isOdd))
+                                             .map(mapChecked(StreamsTest::toText))
+                                             .collect(toList()));
+    }
+
+    @Test
+    public void should_rethrow_unwrapped_checked_exception_from_map() throws Exception {
+        expectation.expect(IOException.class);
+        expectation.expectMessage("4");
+
+        Stream.of(1, 4).map(mapChecked(StreamsTest::toText)).collect(toList());
+    }
+
+    @Test
+    public void should_rethrow_unwrapped_checked_exception_from_filter() throws Exception {
+        expectation.expect(IOException.class);
+
+        IntStream.range(0, 10_000).boxed().parallel().filter(filterChecked(i -> isOdd(i + 4))).count();
+    }
+
+    @Test
+    public void should_perform_checked_action() throws Exception {
+        final AtomicInteger sum = new AtomicInteger();
+
+        forEachChecked(IntStream.rangeClosed(1, 100).boxed().parallel(), sum::addAndGet);
+
+        assertEquals(5050, sum.get());
+    }
+
+    @Test
+    public void should_stop_after_first_failure_of_checked_action() throws Exception {
+        final AtomicInteger consumed = new AtomicInteger();
+        try {
+            forEachChecked(IntStream.range(0, 1_000_000).boxed().parallel(), i -> {
+                consumed.incrementAndGet();
+                throw new IOException("fail");
+            });
+            fail("Expected " + IOException.class.getSimpleName());
+        } catch (IOException e) {
+            // Tasks of the other splits keep running after the terminal operation has thrown
+            ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+            assertTrue("Consumed " + consumed.get(), consumed.get() < 100_000);
+        }
+    }
+
+    @Test
+    public void should_stop_traversal_of_parallel_stream_after_first_failure_of_checked_map() throws Exception {
+        final AtomicInteger mapped = new AtomicInteger();
+        try {
+            mapChecked(IntStream.range(0, 1_000_000).boxed().parallel(), i -> {
+                mapped.incrementAndGet();
+                if (i % 10_000 == 0) {
+                    throw new IOException("fail");
+                }
+                return i;
+            }).count();
+            fail("Expected " + IOException.class.getSimpleName());
+        } catch (Exception e) {
+            assertTrue(e instanceof IOException);
+            // Tasks of the other splits keep running after the terminal operation has thrown
+            ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+            assertTrue("Mapped " + mapped.get(), mapped.get() < 100_000);
+        }
+    }
+
+    @Test
+    public void should_stop_traversal_of_parallel_stream_after_first_failure_of_checked_filter() throws Exception {
+        final AtomicInteger tested = new AtomicInteger();
+        try {
+            filterChecked(IntStream.range(0, 1_000_000).boxed().parallel(), i -> {
+                tested.incrementAndGet();
+                if (i % 10_000 == 0) {
+                    throw new IOException("fail");
+                }
+                return true;
+            }).count();
+            fail("Expected " + IOException.class.getSimpleName());
+        } catch (Exception e) {
+            assertTrue(e instanceof IOException);
+            // Tasks of the other splits keep running after the terminal operation has thrown
+            ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+            assertTrue("Tested " + tested.get(), tested.get() < 100_000);
+        }
+    }
+
+    @Test
+    public void should_map_and_filter_stream_with_checked_functions() {
+        assertEquals(asList("1", "3"), mapChecked(filterChecked(Stream.of(1, 2, 3), StreamsTest::isOdd), StreamsTest::toText).collect(toList()));
+    }
+
+    private static boolean isOdd(final int i) throws IOException {
+        if (i > 3) {
+            throw new IOException(String.valueOf(i));
+        }
+        return i % 2 == 1;
+    }
+
+    private static String toText(final int i) throws IOException {
+        if (i > 3) {
+            throw new IOException(String.valueOf(i));
+        }
+        return String.valueOf(i);
+    }
+
+    @Test
+    public void should_map_async_in_encounter_order_with_bounded_concurrency() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final List<Integer> result = mapAsync(IntStream.range(0, 50).boxed(), i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep((50 - i) % 7);
+            running.decrementAndGet();
+            return i * 2;
+        }, 5).collect(toList());
+
+        assertEquals(IntStream.range(0, 50).map(i -> i * 2).boxed().collect(toList()), result);
+        assertTrue(maxRunning.get() <= 5);
+    }
+
+    @Test
+    public void should_map_async_unordered() {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Set<Integer> result = mapAsyncUnordered(IntStream.range(0, 100).boxed(), i -> {
+                Thread.sleep(i % 3);
+                return i;
+            }, 4, executor).collect(toSet());
+
+            assertEquals(IntStream.range(0, 100).boxed().collect(toSet()), result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void should_propagate_failure_of_async_mapping() throws Exception {
+        expectation.expect(IOException.class);
+        expectation.expectMessage("4");
+
+        mapAsync(Stream.of(1, 2, 3, 4, 5), StreamsTest::toText, 2).collect(toList());
+    }
+
+    @Test
+    public void should_reduce_primitive_streams_to_only_one() {
+        assertEquals(OptionalInt.of(1), IntStream.of(1).reduce(toOnlyOneInt()));
+        assertEquals(OptionalLong.of(1L), LongStream.of(1L).reduce(toOnlyOneLong("Only one!")));
+        assertEquals(OptionalDouble.of(1.5), DoubleStream.of(1.5).reduce(toOnlyOneDouble("Only %s!", "one")));
+    }
+
+    @Test
+    public void should_fail_if_more_than_one_element_exists_in_primitive_stream() {
+        expectation.expect(IllegalStateValidationException.class);
+        expectation.expectMessage("Only one!");
+
+        DoubleStream.of(1, 2).reduce(toOnlyOneDouble("Only %s!", "one"));
+    }
+
+    @Test
+    public void should_return_at_most_one_double() {
+        assertEquals(1.5, onlyOne(DoubleStream.of(1.5)), 0);
+        assertEquals(OptionalDouble.of(-2.5), atMostOne(DoubleStream.of(1, -2.5, 3).parallel().filter(d -> d < 0)));
+        assertEquals(OptionalDouble.empty(), atMostOne(DoubleStream.empty(), "Only one!"));
+    }
+
+    @Test
+    public void should_batch_primitive_streams() {
+        final List<int[]> ints = batch(IntStream.range(0, 5), 2).collect(toList());
+        assertArrayEquals(new int[]{0, 1}, ints.get(0));
+        assertArrayEquals(new int[]{4}, ints.get(2));
+
+        assertEquals(LongStream.range(0, 100_003).sum(), batch(LongStream.range(0, 100_003).parallel(), 7).flatMapToLong(LongStream::of).sum());
+        assertEquals(14_287, batch(LongStream.range(0, 100_003).parallel(), 7).count());
+        assertArrayEquals(new double[]{1.5, 2.5}, batch(DoubleStream.of(1.5, 2.5), 10).findFirst().get(), 0);
+    }
+
+    @Test
+    public void should_batch_parallel_primitive_stream_on_batch_boundaries() {
+        final int[] expected = IntStream.range(0, 100_003).toArray();
+
+        final List<int[]> sized = batch(IntStream.of(expected).parallel(), 7).collect(toList());
+        final List<int[]> unsized = batch(IntStream.of(expected).parallel().filter(i -> true), 7).collect(toList());
+
+        for (final List<int[]> batches : asList(sized, unsized)) {
+            assertEquals(14_287, batches.size());
+            assertTrue(batches.subList(0, batches.size() - 1).stream().allMatch(b -> b.length == 7));
+            assertArrayEquals(expected, batches.stream().flatMapToInt(IntStream::of).toArray());
+        }
+    }
+
+    @Test
+    public void should_keep_sized_characteristics_when_batching_primitive_stream() {
+        final Spliterator<long[]> spliterator = batch(LongStream.range(0, 5), 2).spliterator();
+
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        assertEquals(3, spliterator.getExactSizeIfKnown());
+        final Spliterator<long[]> prefix = spliterator.trySplit();
+        assertEquals(prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown(), 3);
+        assertArrayEquals(new long[]{0, 1}, next(prefix));
+        assertArrayEquals(new long[]{2, 3}, next(spliterator));
+        assertArrayEquals(new long[]{4}, next(spliterator));
+    }
+
+    @Test
+    public void should_reuse_batch_array_for_sequential_primitive_stream() {
+        final Set<double[]> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<Double> flattened = new ArrayList<>();
+
+        forEachBatch(DoubleStream.of(1, 2, 3, 4, 5), 2, b -> {
+            seen.add(b);
+            DoubleStream.of(b).forEach(flattened::add);
+        });
+
+        assertEquals(asList(1.0, 2.0, 3.0, 4.0, 5.0), flattened);
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    public void should_not_reuse_batch_array_for_parallel_primitive_stream() {
+        final Set<int[]> seen = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        forEachBatch(IntStream.range(0, 1000).parallel(), 10, seen::add);
+
+        assertEquals(100, seen.size());
+        assertEquals(IntStream.range(0, 1000).sum(), seen.stream().flatMapToInt(IntStream::of).sum());
+    }
+
+    private static <T> T next(final Spliterator<T> spliterator) {
+        final List<T> next = new ArrayList<>();
+        assertTrue(spliterator.tryAdvance(next::add));
+        return next.get(0);
+    }
+
+    @Test
+    public void should_keep_first_element_per_key() {
+        assertEquals(asList("a", "bb", null), distinctBy(Stream.of("a", "bb", "c", null, "dd", null), s -> s == null ? null : s.length()).collect(toList()));
+    }
+
+    @Test
+    public void should_keep_first_element_per_key_in_ordered_parallel_stream() {
+        final List<Integer> result = distinctBy(IntStream.range(0, 100_000).boxed().parallel(), i -> i % 1000).collect(toList());
+
+        assertEquals(IntStream.range(0, 1000).boxed().collect(toList()), result);
+    }
+
+    @Test
+    public void should_keep_one_element_per_key_in_unordered_parallel_stream() {
+        final Set<Integer> keys = distinctBy(IntStream.range(0, 100_000).boxed().parallel().unordered(), i -> i % 1000).map(i -> i % 1000).collect(toSet());
+
+        assertEquals(1000, keys.size());
+        assertEquals(1000, distinctBy(IntStream.range(0, 100_000).boxed().parallel().unordered(), i -> i % 1000).count());
+    }
+
+    @Test
+    public void should_keep_first_element_per_key_when_made_parallel_after_distinct_by() {
+        final List<Integer> values = IntStream.range(0, 2_000_000).boxed().collect(toList());
+        final List<Integer> expected = IntStream.range(0, 500_000).boxed().collect(toList());
+
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(expected, distinctBy(values.stream(), n -> n % 500_000).parallel().collect(toList()));
+            assertEquals(expected, distinctBy(IntStream.range(0, 2_000_000).boxed(), n -> n % 500_000).parallel().collect(toList()));
+            assertEquals(500_000, distinctBy(values.stream().unordered(), n -> n % 500_000).parallel().count());
+        }
+    }
+
+    @Test
+    public void should_keep_first_element_per_key_when_made_sequential_after_distinct_by() {
+        final List<Integer> values = IntStream.range(0, 100_000).boxed().collect(toList());
+
+        assertEquals(IntStream.range(0, 1000).boxed().collect(toList()), distinctBy(values.parallelStream(), n -> n % 1000).sequential().collect(toList()));
+    }
+
+    @Test
+    public void should_keep_first_element_per_key_hash() {
+        assertEquals(asList(0L, 1L, 2L), distinctByHash(LongStream.range(0, 30).map(l -> l % 3).boxed(), l -> l, 100).collect(toList()));
+        assertEquals(10_000, distinctByHash(LongStream.range(0, 100_000).map(l -> l % 10_000).boxed().parallel(), l -> l, 100).count());
+    }
+
+    @Test
+    public void should_remove_duplicates_approximately() {
+        final ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(1000, 0.001);
+
+        final List<String> result = approximatelyDistinct(Stream.of("a", "b", "a", "c", "b"), s -> s, filter).collect(toList());
+
+        assertEquals(asList("a", "b", "c"), result);
+        assertTrue(filter.fillRatio() > 0);
+        assertTrue(approximatelyDistinct(IntStream.range(0, 100_000).boxed(), i -> i % 1000, 1000, 0.001).count() <= 1000);
+    }
+
+    @Test
+    public void should_keep_keys_with_colliding_hash_codes_when_deduplicating_by_64_bit_hash() {
+        final long key = 1L << 32 | 1;
+        assertEquals(Long.hashCode(0L), Long.hashCode(key));
+
+        assertEquals(1, approximatelyDistinct(Stream.of(0L, key), l -> l, 1000, 0.001).count());
+        assertEquals(asList(0L, key, 7L), approximatelyDistinctByHash(Stream.of(0L, key, 0L, 7L, key), l -> l, 1000, 0.001).collect(toList()));
+    }
+
+    @Test
+    public void should_read_lines_of_mapped_file() throws Exception {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, "first\r\nsmörgåsbord\n\nlast".getBytes(UTF_8));
+
+        final List<String> result = lines(file, UTF_8).map(CharSequence::toString).collect(toList());
+
+        assertEquals(asList("first", "smörgåsbord", "", "last"), result);
+        assertEquals("smörgåsbord".length(), lines(file, UTF_8).skip(1).findFirst().get().length());
+        assertEquals("ör", lines(file, UTF_8).skip(1).findFirst().get().subSequence(2, 4).toString());
+    }
+
+    @Test
+    public void should_read_lines_of_mapped_file_in_parallel() throws Exception {
+        final Path file = folder.newFile().toPath();
+        final List<String> expected = IntStream.range(0, 100_000).mapToObj(i -> "line " + i).collect(toList());
+        Files.write(file, expected, UTF_8);
+
+        assertEquals(expected, lines(file, UTF_8).parallel().map(CharSequence::toString).collect(toList()));
+        assertEquals(10, lines(file, UTF_8).parallel().filter(line -> matches(line, "line 9999\\d")).count());
+    }
+
+    @Test
+    public void should_read_lines_of_file_with_other_charsets() throws Exception {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, asList("a", "åäö"), ISO_8859_1);
+        final Path utf16 = folder.newFile().toPath();
+        Files.write(utf16, asList("a", "åäö"), UTF_16);
+
+        assertEquals(asList("a", "åäö"), lines(file, ISO_8859_1).map(CharSequence::toString).collect(toList()));
+        assertEquals(asList("a", "åäö"), lines(utf16, UTF_16).map(CharSequence::toString).collect(toList()));
+    }
+
+    @Test
+    public void should_read_empty_file() throws Exception {
+        assertEquals(0, lines(folder.newFile().toPath(), UTF_8).count());
+    }
+
+    @Test
+    public void should_count_by_key() {
+        final ObjectLongMap<Integer> counts = IntStream.range(0, 1000).boxed().collect(countingBy(i -> i % 7));
+
+        assertEquals(7, counts.size());
+        assertEquals(143, counts.get(0));
+        assertEquals(142, counts.get(6));
+        assertEquals(IntStream.range(0, 1000).boxed().collect(groupingBy(i -> i % 7, counting())), counts.toMap());
+    }
+
+    @Test
+    public void should_count_by_key_in_parallel() {
+        final Map<Integer, Long> expected = IntStream.range(0, 100_000).boxed().collect(groupingBy(i -> i % 1000, counting()));
+
+        assertEquals(expected, IntStream.range(0, 100_000).boxed().parallel().collect(countingBy(i -> i % 1000)).toMap());
+        assertEquals(expected, IntStream.range(0, 100_000).boxed().parallel().collect(countingByConcurrent(i -> i % 1000)).toMap());
+    }
+
+    @Test
+    public void should_count_null_keys() {
+        final ObjectLongMap<String> counts = Stream.of("a", null, "b", null).collect(countingBy(s -> s));
+
+        assertEquals(2, counts.get(null));
+        assertEquals(1, counts.get("a"));
+    }
+
+    @Test
+    public void should_sum_min_and_max_long_by_key() {
+        final List<String> words = asList("a", "bb", "cc", "ddd", "e");
+
+        assertEquals(4, words.stream().collect(summingLongBy(String::length, String::length)).get(2));
+        assertEquals(2, words.stream().collect(summingLongBy(String::length, String::length)).get(1));
+        assertEquals('b', words.stream().collect(minLongBy(String::length, s -> s.charAt(0))).get(2));
+        assertEquals('c', words.stream().collect(maxLongBy(String::length, s -> s.charAt(0))).get(2));
+        assertEquals(words.stream().collect(groupingBy(String::length, summingLong(String::length))),
+                     words.parallelStream().collect(summingLongByConcurrent(String::length, String::length)).toMap());
+    }
+
+    @Test
+    public void should_sum_min_and_max_double_by_key() {
+        final List<Double> values = asList(1.5, -2.0, 2.5, -0.5);
+
+        assertEquals(4.0, values.stream().collect(summingDoubleBy(d -> d > 0, d -> d)).get(true), 0);
+        assertEquals(-2.5, values.parallelStream().collect(summingDoubleBy(d -> d > 0, d -> d)).get(false), 0);
+        assertEquals(-2.5, values.parallelStream().collect(summingDoubleByConcurrent(d -> d > 0, d -> d)).get(false), 0);
+        assertEquals(1.5, values.stream().collect(minDoubleBy(d -> d > 0, d -> d)).get(true), 0);
+        assertEquals(-0.5, values.stream().collect(maxDoubleBy(d -> d > 0, d -> d)).get(false), 0);
+    }
+
+    @Test
+    public void should_pick_stripe_independently_of_the_slot_in_the_striped_map() {
+        final int stripes = Streams.Striped.STRIPES;
+        final List<Set<Integer>> slotsPerStripe = new ArrayList<>();
+        for (int i = 0; i < stripes; ++i) {
+            slotsPerStripe.add(new HashSet<>());
+        }
+
+        for (int key = 0; key < 1000 * stripes; ++key) {
+            // The low bits of the mixed hash code are the home slot of the key in the map of the stripe
+            slotsPerStripe.get(Streams.Striped.index(key)).add((int) Hashing.mix(Integer.hashCode(key)) & (stripes - 1));
+        }
+
+        for (final Set<Integer> slots : slotsPerStripe) {
+            assertTrue(slots.size() > stripes / 2);
+        }
+    }
+
+    @Test
+    public void should_merge_sorted_streams() {
+        final List<Integer> result = mergeSorted(Comparator.<Integer>naturalOrder(),
+                                                 Stream.of(1, 4, 7, 10),
+                                                 Stream.of(2, 5),
+                                                 Stream.empty(),
+                                                 Stream.of(0, 3, 6, 8, 9, 11))
+                .collect(toList());
+
+        assertEquals(IntStream.rangeClosed(0, 11).boxed().collect(toList()), result);
+    }
+
+    @Test
+    public void should_merge_large_number_of_sorted_streams() {
+        final List<Stream<Integer>> streams = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            final int offset = i;
+            streams.add(IntStream.range(0, 1000).map(n -> n * 100 + offset).boxed());
+        }
+
+        final List<Integer> result = mergeSorted(Comparator.<Integer>naturalOrder(), streams).collect(toList());
+
+        assertEquals(IntStream.range(0, 100_000).boxed().collect(toList()), result);
+    }
+
+    @Test
+    public void should_keep_order_of_streams_for_equal_elements() {
+        final List<String> result = mergeSorted(Comparator.comparing(String::length), Stream.of("a", "cc"), Stream.of("b", "dd", "eee"), Stream.of("ff")).collect(toList());
+
+        assertEquals(asList("a", "b", "cc", "dd", "ff", "eee"), result);
+    }
+
+    @Test
+    public void should_merge_comparables_in_natural_order() {
+        final List<Version> result = mergeSorted(Stream.of(new Version(1), new Version(3)), Stream.of(new Version(2))).collect(toList());
+
+        assertEquals(asList(1, 2, 3), result.stream().map(v -> v.number).collect(toList()));
+    }
+
+    @Test
+    public void should_only_buffer_one_element_per_stream() {
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+
+        final Optional<Integer> result = mergeSorted(Comparator.<Integer>naturalOrder(),
+                                                     IntStream.range(0, 1000).boxed().peek(i -> first.incrementAndGet()),
+                                                     IntStream.range(0, 1000).boxed().peek(i -> second.incrementAndGet()))
+                .skip(5)
+                .findFirst();
+
+        assertEquals(Optional.of(2), result);
+        assertEquals(4, first.get());
+        assertEquals(3, second.get());
+    }
+
+    @Test
+    public void should_close_all_merged_streams() {
+        final AtomicInteger closed = new AtomicInteger();
+
+        mergeSorted(Comparator.<Integer>naturalOrder(), Stream.of(1).onClose(closed::incrementAndGet), Stream.of(2).onClose(closed::incrementAndGet)).close();
+
+        assertEquals(2, closed.get());
+    }
+
+    @Test
+    public void should_count_elements_of_instrumented_stage() {
+        final StageMetrics metrics = StageMetrics.of("count");
+        metrics.reset();
+
+        final long sum = instrument(IntStream.range(0, 10_000).boxed().filter(i -> i % 2 == 0), "count", 0).mapToLong(i -> i).sum();
+
+        assertEquals(24_995_000, sum);
+        assertEquals(5000, metrics.count());
+        assertEquals(0, metrics.sampleCount());
+        assertEquals(Long.valueOf(5000), metrics.threadDistribution().get(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void should_sample_latency_of_instrumented_stage() {
+        final StageMetrics metrics = StageMetrics.of("sampled");
+        metrics.reset();
+
+        instrument(IntStream.range(0, 1000).boxed(), "sampled", 10).forEach(i -> {});
+        final Optional<Integer> first = instrument(IntStream.range(0, 1000).boxed(), "sampled", 10).filter(i -> i > 100).findFirst();
+
+        assertEquals(Optional.of(101), first);
+        assertEquals(1102, metrics.count());
+        assertEquals(100 + 11, metrics.sampleCount());
+        assertTrue(metrics.maxNanos() >= metrics.percentileNanos(50));
+    }
+
+    @Test
+    public void should_record_thread_distribution_of_parallel_stage() {
+        final StageMetrics metrics = StageMetrics.of("parallel");
+        metrics.reset();
+
+        final List<Integer> result = instrument(IntStream.range(0, 100_000).boxed().parallel(), "parallel").collect(toList());
+
+        assertEquals(IntStream.range(0, 100_000).boxed().collect(toList()), result);
+        assertEquals(100_000, metrics.count());
+        assertEquals(100_000, metrics.threadDistribution().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    private static boolean matches(final CharSequence line, final String pattern) {
+        try {
+            matchesPattern(line, pattern);
+            return true;
+        } catch (IllegalArgumentValidationException e) {
+            return false;
+        }
+    }
+
+    private static final class Version implements Comparable<Version> {
+        private final int number;
+
+        private Version(final int number) {
+            this.number = number;
+        }
+
+        @Override
+        public int compareTo(final Version that) {
+            return Integer.compare(number, that.number);
+        }
+    }
 }
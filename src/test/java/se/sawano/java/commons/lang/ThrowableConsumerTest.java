@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThrowableConsumerTest {
+
+    @Rule
+    public final ExpectedException expectation = ExpectedException.none();
+
+    @Test
+    public void should_allow_for_an_exception_to_be_thrown() throws Exception {
+        expectation.expect(Exception.class);
+        expectation.expectMessage("From consumer");
+
+        final ThrowableConsumer<Integer> c = ThrowableConsumerTest::throwingMethod;
+        c.accept(1);
+    }
+
+    @Test
+    public void should_accept_value() throws Exception {
+        final AtomicInteger value = new AtomicInteger();
+
+        final ThrowableConsumer<Integer> c = value::set;
+        c.accept(2);
+
+        assertEquals(2, value.get());
+    }
+
+    static void throwingMethod(final Integer i) throws Exception {
+        throw new Exception("From consumer");
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ThrowableFunctionsTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void should_allow_recursive_calls_with_other_arguments() throws Exception {
+        final AtomicReference<CachedFunction<Integer, Long>> fibonacci = new AtomicReference<>();
+        fibonacci.set(ThrowableFunctions.cached(n -> n < 2 ? (long) n : fibonacci.get().apply(n - 1) + fibonacci.get().apply(n - 2), 100));
+
+        assertEquals(Long.valueOf(12_586_269_025L), fibonacci.get().apply(50));
+    }
+
+    @Test
+    public void should_fail_fast_on_recursive_call_with_same_argument() throws Exception {
+        final AtomicReference<CachedFunction<String, Integer>> cached = new AtomicReference<>();
+        cached.set(ThrowableFunctions.cached(s -> cached.get().apply(s), 10));
+
+        try {
+            cached.get().apply("a");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals(0, cached.get().size());
+        }
+    }
+
+    @Test
+    public void should_cache_results() throws Exception {
+        final CachedFunction<String, Integer> cached = ThrowableFunctions.cached(this::length, 10);
+
+        assertEquals(Integer.valueOf(3), cached.apply("abc"));
+        assertEquals(Integer.valueOf(3), cached.apply("abc"));
+        assertEquals(Integer.valueOf(2), cached.apply("ab"));
+        assertEquals(Integer.valueOf(0), cached.apply(null));
+        assertEquals(Integer.valueOf(0), cached.apply(null));
+
+        assertEquals(3, calls.get());
+        final CacheStatistics statistics = cached.statistics();
+        assertEquals(2, statistics.hitCount());
+        assertEquals(3, statistics.missCount());
+        assertEquals(3, statistics.loadSuccessCount());
+        assertEquals(0.4, statistics.hitRate(), 0.0001);
+    }
+
+    @Test
+    public void should_share_load_between_concurrent_callers() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CachedFunction<String, Integer> cached = ThrowableFunctions.cached(s -> {
+            Thread.sleep(50);
+            return length(s);
+        }, 10);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cached.apply("abc");
+                }));
+            }
+            start.countDown();
+            for (final Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(3), result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, cached.statistics().missCount());
+        assertEquals(7, cached.statistics().hitCount());
+    }
+
+    @Test
+    public void should_not_cache_failures() throws Exception {
+        final CachedFunction<String, Integer> cached = ThrowableFunctions.cached(s -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IOException("failed");
+            }
+            return s.length();
+        }, 10);
+
+        try {
+            cached.apply("abc");
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(Integer.valueOf(3), cached.apply("abc"));
+        assertEquals(1, cached.statistics().loadFailureCount());
+        assertEquals(1, cached.statistics().loadSuccessCount());
+    }
+
+    @Test
+    public void should_evict_when_full() throws Exception {
+        final CachedFunction<Integer, Integer> cached = ThrowableFunctions.cached(i -> i * 2, 100);
+
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(Integer.valueOf(i * 2), cached.apply(i));
+        }
+
+        assertEquals(100, cached.size());
+        assertEquals(900, cached.statistics().evictionCount());
+    }
+
+    @Test
+    public void should_keep_frequently_used_results_during_scan() throws Exception {
+        final CachedFunction<Integer, Integer> cached = ThrowableFunctions.cached(i -> {
+            calls.incrementAndGet();
+            return i;
+        }, 100);
+        for (int round = 0; round < 5; ++round) {
+            for (int hot = 0; hot < 50; ++hot) {
+                cached.apply(hot);
+            }
+        }
+        calls.set(0);
+
+        for (int cold = 1000; cold < 11_000; ++cold) {
+            cached.apply(cold);
+        }
+        for (int hot = 0; hot < 50; ++hot) {
+            cached.apply(hot);
+        }
+
+        // Only the hot result that was still in the admission window may have been evicted
+        assertTrue("calls: " + calls.get(), calls.get() <= 10_001);
+    }
+
+    @Test
+    public void should_invalidate_results() throws Exception {
+        final CachedFunction<String, Integer> cached = ThrowableFunctions.cached(this::length, 10);
+        cached.apply("a");
+        cached.apply("b");
+
+        cached.invalidate("a");
+        assertEquals(1, cached.size());
+        cached.apply("a");
+        cached.invalidateAll();
+        assertEquals(0, cached.size());
+        cached.apply("b");
+
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void should_report_load_time() throws Exception {
+        final CachedFunction<String, Integer> cached = ThrowableFunctions.cached(s -> {
+            Thread.sleep(10);
+            return 1;
+        }, 10);
+
+        cached.apply("a");
+
+        assertTrue(cached.statistics().totalLoadTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(cached.statistics().averageLoadPenaltyNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_non_positive_size() {
+        ThrowableFunctions.cached(this::length, 0);
+    }
+
+    private Integer length(final String s) {
+        calls.incrementAndGet();
+        return s == null ? 0 : s.length();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertTrue;
+
+public class ThrowablePredicateTest {
+
+    @Rule
+    public final ExpectedException expectation = ExpectedException.none();
+
+    @Test
+    public void should_allow_for_an_exception_to_be_thrown() throws Exception {
+        expectation.expect(Exception.class);
+        expectation.expectMessage("From predicate");
+
+        final ThrowablePredicate<Integer> p = ThrowablePredicateTest::throwingMethod;
+        p.test(1);
+    }
+
+    @Test
+    public void should_return_value() throws Exception {
+
+        final ThrowablePredicate<Integer> p = ThrowablePredicateTest::nonThrowingMethod;
+        assertTrue(p.test(2));
+    }
+
+    static boolean throwingMethod(final Integer i) throws Exception {
+        throw new Exception("From predicate");
+    }
+
+    static boolean nonThrowingMethod(final Integer i) {
+        return i == 2;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.Test;
+import se.sawano.java.commons.lang.ThrowableSuppliers.ExceptionPolicy;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ThrowableSuppliersTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void should_memoize_value() throws Exception {
+        final ThrowableSupplier<Integer> memoized = ThrowableSuppliers.memoize(calls::incrementAndGet);
+
+        assertEquals(Integer.valueOf(1), memoized.get());
+        assertEquals(Integer.valueOf(1), memoized.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void should_load_value_once_for_concurrent_callers() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final ThrowableSupplier<Integer> memoized = ThrowableSuppliers.memoize(() -> {
+            Thread.sleep(50);
+            return calls.incrementAndGet();
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return memoized.get();
+                }));
+            }
+            start.countDown();
+            for (final Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void should_retry_after_exception_by_default() throws Exception {
+        final ThrowableSupplier<Integer> memoized = ThrowableSuppliers.memoize(failingOnce());
+
+        assertFails(memoized, "failure 1");
+        assertEquals(Integer.valueOf(2), memoized.get());
+        assertEquals(Integer.valueOf(2), memoized.get());
+    }
+
+    @Test
+    public void should_cache_exception() throws Exception {
+        final ThrowableSupplier<Integer> memoized = ThrowableSuppliers.memoize(failingOnce(), ExceptionPolicy.CACHE);
+
+        final Exception first = assertFails(memoized, "failure 1");
+        assertSame(first, assertFails(memoized, "failure 1"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void should_expire_value() throws Exception {
+        final ThrowableSupplier<Integer> memoized = withExpiry(calls::incrementAndGet, 100, 0, false);
+
+        assertEquals(Integer.valueOf(1), memoized.get());
+        now.set(99);
+        assertEquals(Integer.valueOf(1), memoized.get());
+        now.set(100);
+        assertEquals(Integer.valueOf(2), memoized.get());
+        assertEquals(Integer.valueOf(2), memoized.get());
+    }
+
+    @Test
+    public void should_expire_cached_exception() throws Exception {
+        final ThrowableSupplier<Integer> memoized = withExpiry(failingOnce(), 100, 0, true);
+
+        assertFails(memoized, "failure 1");
+        now.set(50);
+        assertFails(memoized, "failure 1");
+        now.set(100);
+        assertEquals(Integer.valueOf(2), memoized.get());
+    }
+
+    @Test
+    public void should_refresh_ahead_of_expiry() throws Exception {
+        final ThrowableSupplier<Integer> memoized = withExpiry(calls::incrementAndGet, 100, 20, false);
+
+        assertEquals(Integer.valueOf(1), memoized.get());
+        now.set(79);
+        assertEquals(Integer.valueOf(1), memoized.get());
+        assertEquals(0, refreshes.size());
+        now.set(80);
+        assertEquals(Integer.valueOf(1), memoized.get());
+        assertEquals(Integer.valueOf(1), memoized.get());
+        assertEquals(1, refreshes.size());
+
+        refreshes.remove(0).run();
+
+        assertEquals(Integer.valueOf(2), memoized.get());
+        now.set(150);
+        assertEquals(Integer.valueOf(2), memoized.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void should_not_overwrite_value_of_later_load_with_earlier_refresh() throws Exception {
+        final ThrowableSupplier<Integer> memoized = withExpiry(calls::incrementAndGet, 100, 20, false);
+
+        assertEquals(Integer.valueOf(1), memoized.get());
+        now.set(90);
+        memoized.get();
+        now.set(150);
+        assertEquals(Integer.valueOf(2), memoized.get());
+
+        refreshes.remove(0).run();
+
+        assertEquals(3, calls.get());
+        assertEquals(Integer.valueOf(2), memoized.get());
+    }
+
+    @Test
+    public void should_keep_value_when_refresh_fails() throws Exception {
+        final ThrowableSupplier<Integer> memoized = withExpiry(() -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IOException("refresh failed");
+            }
+            return calls.get();
+        }, 100, 20, true);
+
+        assertEquals(Integer.valueOf(1), memoized.get());
+        now.set(90);
+        memoized.get();
+        refreshes.remove(0).run();
+        assertEquals(Integer.valueOf(1), memoized.get());
+        refreshes.remove(0).run();
+        assertEquals(Integer.valueOf(3), memoized.get());
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_refresh_ahead_longer_than_time_to_live() {
+        ThrowableSuppliers.memoizeWithExpiry(() -> 1, Duration.ofSeconds(1), Duration.ofSeconds(1));
+    }
+
+    private ThrowableSupplier<Integer> withExpiry(final ThrowableSupplier<Integer> supplier, final long ttl, final long refreshAhead, final boolean cacheExceptions) {
+        return new MemoizingSupplier<>(supplier, ttl, refreshAhead, cacheExceptions, refreshes::add, now::get);
+    }
+
+    private ThrowableSupplier<Integer> failingOnce() {
+        return () -> {
+            final int call = calls.incrementAndGet();
+            if (call == 1) {
+                throw new IOException("failure " + call);
+            }
+            return call;
+        };
+    }
+
+    private static Exception assertFails(final ThrowableSupplier<?> supplier, final String message) {
+        try {
+            supplier.get();
+            fail("Expected IOException");
+            return null;
+        } catch (Exception e) {
+            assertEquals(IOException.class, e.getClass());
+            assertEquals(message, e.getMessage());
+            return e;
+        }
+    }
+}
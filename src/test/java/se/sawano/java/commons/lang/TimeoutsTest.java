@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Daniel Sawano
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.sawano.java.commons.lang;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import se.sawano.java.commons.lang.validate.exception.IllegalArgumentValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimeoutsTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    @AfterClass
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void should_return_result_within_deadline() throws Exception {
+        assertEquals("done", Timeouts.call(() -> "done", Duration.ofSeconds(5), EXECUTOR));
+    }
+
+    @Test
+    public void should_use_default_executor() throws Exception {
+        assertEquals("done", Timeouts.call(() -> "done", Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void should_rethrow_exception_unwrapped() throws Exception {
+        try {
+            Timeouts.call(() -> {
+                throw new IOException("failed");
+            }, Duration.ofSeconds(5), EXECUTOR);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void should_interrupt_call_on_timeout() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        try {
+            Timeouts.call(() -> {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "late";
+            }, Duration.ofMillis(50), EXECUTOR);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_not_have_deadline_outside_of_call() {
+        assertFalse(Timeouts.remaining().isPresent());
+    }
+
+    @Test
+    public void should_expose_remaining_time_to_call() throws Exception {
+        final Optional<Duration> remaining = Timeouts.call(Timeouts::remaining, Duration.ofSeconds(5), EXECUTOR);
+
+        assertTrue(remaining.isPresent());
+        assertTrue(remaining.get().compareTo(Duration.ofSeconds(5)) <= 0);
+        assertTrue(remaining.get().compareTo(Duration.ZERO) > 0);
+    }
+
+    @Test
+    public void should_limit_nested_call_to_remaining_deadline() throws Exception {
+        final Optional<Duration> nested = Timeouts.call(() -> Timeouts.call(Timeouts::remaining, Duration.ofHours(1), EXECUTOR), Duration.ofSeconds(1), EXECUTOR);
+
+        assertTrue(nested.isPresent());
+        assertTrue(nested.get().compareTo(Duration.ofSeconds(1)) <= 0);
+    }
+
+    @Test
+    public void should_keep_shorter_nested_deadline() throws Exception {
+        final Optional<Duration> nested = Timeouts.call(() -> Timeouts.call(Timeouts::remaining, Duration.ofMillis(100), EXECUTOR), Duration.ofHours(1), EXECUTOR);
+
+        assertTrue(nested.get().compareTo(Duration.ofMillis(100)) <= 0);
+    }
+
+    @Test
+    public void should_cancel_nested_call_at_outer_deadline() throws Exception {
+        final CountDownLatch nestedInterrupted = new CountDownLatch(1);
+        try {
+            Timeouts.call(() -> Timeouts.call(() -> {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    nestedInterrupted.countDown();
+                }
+                return "late";
+            }, Duration.ofHours(1), EXECUTOR), Duration.ofMillis(100), EXECUTOR);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertTrue(nestedInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_not_call_supplier_when_deadline_has_passed() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            Timeouts.call(() -> {
+                final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+                while (System.nanoTime() < end) {
+                    // ignores interruption, like a call that does not check for it
+                }
+                return Timeouts.call(calls::incrementAndGet, Duration.ofSeconds(1), EXECUTOR);
+            }, Duration.ofMillis(50), EXECUTOR);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        Thread.sleep(200);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void should_restore_context_of_reused_thread() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            Timeouts.call(() -> "first", Duration.ofSeconds(1), single);
+            assertFalse(single.submit(Timeouts::remaining).get().isPresent());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentValidationException.class)
+    public void should_not_accept_zero_timeout() throws Exception {
+        Timeouts.call(() -> "done", Duration.ZERO, EXECUTOR);
+    }
+}